@@ -128,6 +128,49 @@ public class Board implements Definitions {
 	}
 	
 	
+	/**
+	 *  Creates a copy of a board, used by the helper search threads
+	 *  The Zobrist keys are shared, so both boards hash positions the same way
+	 *  
+	 *  @param Board the board to copy
+	 *  
+	 */
+	public Board(Board board) {
+		byte i;
+		
+		table = new byte[12][12];
+		for (i = 0; i < 12; ++i)
+			table[i] = board.table[i].clone();
+		toMove = board.toMove;
+		
+		whiteKingLine = board.whiteKingLine;
+		whiteKingCol = board.whiteKingCol;
+		blackKingLine = board.blackKingLine;
+		blackKingCol = board.blackKingCol;
+		
+		enPassantLine = board.enPassantLine;
+		enPassantCol = board.enPassantCol;
+		whiteCastle = board.whiteCastle;
+		blackCastle = board.blackCastle;
+		previousRights = board.previousRights.clone();
+		previousRightsIndex = board.previousRightsIndex;
+		
+		nWKnights = board.nWKnights;
+		nBKnights = board.nBKnights;
+		nWBishops = board.nWBishops;
+		nBBishops = board.nBBishops;
+		nWRooks = board.nWRooks;
+		nBRooks = board.nBRooks;
+		nWQueens = board.nWQueens;
+		nBQueens = board.nBQueens;
+		
+		Zobrist_White = board.Zobrist_White;
+		Zobrist_Black = board.Zobrist_Black;
+		Zobrist_Side = board.Zobrist_Side;
+		Zobrist_Key = board.Zobrist_Key;
+	}
+	
+	
 	
 	/**
 	 *  Makes the move on the board and can also change en passant and castling rights.
@@ -1650,7 +1693,7 @@ public class Board implements Definitions {
 	
 	/**
 	 * Generates all possible valid moves for the current side (might not be legal)
-	 * NOT USED
+	 * Used for generating quiet checks
 	 * 
 	 * @return a list of valid non capture moves
 	 * 
@@ -1683,6 +1726,29 @@ public class Board implements Definitions {
 	
 	
 	
+	/**
+	 * Generates quiet moves that give check (might not be legal)
+	 * Used in the first ply of the quiescent search
+	 * 
+	 * @return a list of quiet checks
+	 * 
+	 */
+	public ArrayList<Move> generateQuietChecks() {
+		ArrayList<Move> checks = new ArrayList<Move>();
+		Move aux;
+		Iterator<Move> it = generateNonCaptures().iterator();
+		
+		while (it.hasNext()) {
+			aux = it.next();
+			// captures and promotions are generated by generateCaptures
+			if ( aux.pieceCaptured == EMPTY_SQUARE && aux.moveType < PROMOTION_QUEEN && givesCheck(aux) )
+				checks.add(aux);
+		}
+		return checks;
+	}
+	
+	
+	
 	/*********************************/
 	/** END Move generation methods **/
 	/*********************************/
@@ -1830,8 +1896,177 @@ public class Board implements Definitions {
 		
 		return false;
 	}
-	
-	
+
+
+	/**
+	 *  Static exchange evaluation.
+	 *  Plays out the sequence of captures on the destination square of the move,
+	 *  each side recapturing with its least valuable attacker and being free
+	 *  to stop the exchange when continuing would lose material.
+	 *
+	 *  @param Move valid move (capture or not)
+	 *  @return material balance of the exchange for the side making the move
+	 *
+	 */
+	public int staticExchange(Move move) {
+		int[] gain = new int[34];
+		int depth = 0;
+		// pieces lifted from the board during the exchange, restored at the end
+		int[] removedSquares = new int[34];
+		byte[] removedPieces = new byte[34];
+		int nRemoved = 0;
+		byte line = move.destinationLine;
+		byte col = move.destinationCol;
+		byte side;
+		int square, attackerValue;
+
+		// castles do not take part in exchanges
+		if ( move.moveType == SHORT_CASTLE || move.moveType == LONG_CASTLE )
+			return 0;
+
+		// value of the piece captured and of the piece left on the destination square
+		gain[0] = pieceValue[Math.abs(move.pieceCaptured)];
+		attackerValue = pieceValue[Math.abs(move.pieceMoving)];
+		switch ( move.moveType ) {
+			case PROMOTION_QUEEN: attackerValue = QUEEN_VALUE; break;
+			case PROMOTION_ROOK: attackerValue = ROOK_VALUE; break;
+			case PROMOTION_BISHOP: attackerValue = BISHOP_VALUE; break;
+			case PROMOTION_KNIGHT: attackerValue = KNIGHT_VALUE; break;
+			case EN_PASSANT: {
+				// the captured pawn is not on the destination square
+				removedSquares[nRemoved] = move.initialLine * 12 + move.destinationCol;
+				removedPieces[nRemoved++] = table[move.initialLine][move.destinationCol];
+				table[move.initialLine][move.destinationCol] = EMPTY_SQUARE;
+				break;
+			}
+		}
+		if ( move.moveType >= PROMOTION_QUEEN )
+			gain[0] += attackerValue - PAWN_VALUE;
+
+		// the moving piece leaves its square, uncovering x-ray attackers
+		removedSquares[nRemoved] = move.initialLine * 12 + move.initialCol;
+		removedPieces[nRemoved++] = table[move.initialLine][move.initialCol];
+		table[move.initialLine][move.initialCol] = EMPTY_SQUARE;
+		side = (byte) -toMove;
+
+		while (true) {
+			depth++;
+			// speculative gain if the piece on the destination square is taken
+			gain[depth] = attackerValue - gain[depth - 1];
+			// neither side can profit from continuing the exchange
+			if ( Math.max(- gain[depth - 1], gain[depth]) < 0 )
+				break;
+			square = leastValuableAttacker(line, col, side);
+			if ( square == -1 )
+				break;
+			attackerValue = pieceValue[Math.abs(table[square / 12][square % 12])];
+			removedSquares[nRemoved] = square;
+			removedPieces[nRemoved++] = table[square / 12][square % 12];
+			table[square / 12][square % 12] = EMPTY_SQUARE;
+			side = (byte) -side;
+		}
+
+		// negamax the gains back to the first capture
+		while ( --depth > 0 )
+			gain[depth - 1] = - Math.max(- gain[depth - 1], gain[depth]);
+
+		// restore the board (reverse order)
+		while ( nRemoved > 0 ) {
+			nRemoved--;
+			table[removedSquares[nRemoved] / 12][removedSquares[nRemoved] % 12] = removedPieces[nRemoved];
+		}
+
+		return gain[0];
+	}
+
+
+	/**
+	 *  Finds the least valuable piece of the given color attacking a square
+	 *  Used by the static exchange evaluation
+	 *
+	 *  @return square of the attacker (line * 12 + col), -1 if the square is not attacked
+	 */
+	private int leastValuableAttacker(byte i, byte j, byte attacker) {
+		// first piece met on each ray: 4 diagonals, then 4 lines / columns
+		int[] rays = new int[8];
+		int k;
+
+		// pawns
+		if ( table[i - attacker][j - 1] * attacker == PAWN )
+			return (i - attacker) * 12 + j - 1;
+		if ( table[i - attacker][j + 1] * attacker == PAWN )
+			return (i - attacker) * 12 + j + 1;
+
+		// knights
+		if ( table[i + 2][j + 1] * attacker == KNIGHT ) return (i + 2) * 12 + j + 1;
+		if ( table[i + 1][j + 2] * attacker == KNIGHT ) return (i + 1) * 12 + j + 2;
+		if ( table[i - 2][j + 1] * attacker == KNIGHT ) return (i - 2) * 12 + j + 1;
+		if ( table[i - 1][j + 2] * attacker == KNIGHT ) return (i - 1) * 12 + j + 2;
+		if ( table[i + 2][j - 1] * attacker == KNIGHT ) return (i + 2) * 12 + j - 1;
+		if ( table[i + 1][j - 2] * attacker == KNIGHT ) return (i + 1) * 12 + j - 2;
+		if ( table[i - 2][j - 1] * attacker == KNIGHT ) return (i - 2) * 12 + j - 1;
+		if ( table[i - 1][j - 2] * attacker == KNIGHT ) return (i - 1) * 12 + j - 2;
+
+		// sliding pieces
+		rays[0] = firstPieceOnRay(i, j, 1, 1);
+		rays[1] = firstPieceOnRay(i, j, -1, 1);
+		rays[2] = firstPieceOnRay(i, j, -1, -1);
+		rays[3] = firstPieceOnRay(i, j, 1, -1);
+		rays[4] = firstPieceOnRay(i, j, 1, 0);
+		rays[5] = firstPieceOnRay(i, j, 0, 1);
+		rays[6] = firstPieceOnRay(i, j, -1, 0);
+		rays[7] = firstPieceOnRay(i, j, 0, -1);
+
+		for (k = 0; k < 4; k++)
+			if ( table[rays[k] / 12][rays[k] % 12] * attacker == BISHOP )
+				return rays[k];
+		for (k = 4; k < 8; k++)
+			if ( table[rays[k] / 12][rays[k] % 12] * attacker == ROOK )
+				return rays[k];
+		for (k = 0; k < 8; k++)
+			if ( table[rays[k] / 12][rays[k] % 12] * attacker == QUEEN )
+				return rays[k];
+
+		// king
+		if ( table[i + 1][j + 1] * attacker == KING ) return (i + 1) * 12 + j + 1;
+		if ( table[i][j + 1] * attacker == KING ) return i * 12 + j + 1;
+		if ( table[i - 1][j + 1] * attacker == KING ) return (i - 1) * 12 + j + 1;
+		if ( table[i - 1][j] * attacker == KING ) return (i - 1) * 12 + j;
+		if ( table[i - 1][j - 1] * attacker == KING ) return (i - 1) * 12 + j - 1;
+		if ( table[i][j - 1] * attacker == KING ) return i * 12 + j - 1;
+		if ( table[i + 1][j - 1] * attacker == KING ) return (i + 1) * 12 + j - 1;
+		if ( table[i + 1][j] * attacker == KING ) return (i + 1) * 12 + j;
+
+		return -1;
+	}
+
+
+	/** Returns the first non empty square (line * 12 + col) from (i,j) in a direction */
+	private int firstPieceOnRay(byte i, byte j, int lineStep, int colStep) {
+		int line = i + lineStep;
+		int col = j + colStep;
+
+		while ( table[line][col] == EMPTY_SQUARE ) {
+			line += lineStep;
+			col += colStep;
+		}
+		// out of bounds squares never match a piece
+		return line * 12 + col;
+	}
+
+
+	/** Checks if the side to move has a pawn one step away from promotion */
+	public boolean canPromote() {
+		byte j;
+		byte line = (toMove == WHITE) ? LINE7 : LINE2;
+
+		for (j = COLA; j <= COLH; ++j)
+			if ( table[line][j] == PAWN * toMove )
+				return true;
+		return false;
+	}
+
+
 	/** Filters moves, keeping only legal ones */
 	public void filterLegal(ArrayList<Move> moves) {
 		Move aux;
@@ -1959,9 +2194,30 @@ public class Board implements Definitions {
 		
 		return ! control;
 	}
-	
 
+
+	/** Checks if the move puts the opponent in check */
+	public boolean givesCheck(Move move) {
+		boolean control;
+		
+		makeMove(move);
+		control = inCheck();
+		undoMove(move);
+		
+		return control;
+	}
 	
+	
+	/** Checks if the side to move is in check */
+	public boolean inCheck() {
+		if (toMove == WHITE)
+			return isAttacked(whiteKingLine, whiteKingCol, BLACK);
+		else
+			return isAttacked(blackKingLine, blackKingCol, WHITE);
+	}
+
+
+
 	/** Checks if the board is in an endgame position */
 	public boolean isEndgame() {
 		int phase = 0;
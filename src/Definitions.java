@@ -109,11 +109,69 @@ public interface Definitions {
 	public static final float EXTRA_TIME = (float) 0.25;
 	public static final int MIDGAME_MOVES = 15;
     public static final int REPETITION_MOVES = 20;
+	// iterations with the same best move after which less time is used
+	public static final int STABLE_ITERATIONS = 4;
+	// maximum distance from the root reached by the search
+	public static final int MAX_PLY = 128;
+	// scores beyond the bound are mate scores
+	public static final int MATE_BOUND = MATE_VALUE - MAX_PLY;
 	// aspiration window
 	public static final int ASPIRATION_WINDOW = 30;
-	
-	// maximum number of killer moves stored (maximum number of plies reached)
-	public static final int MAX_KILLERS = 50;
+
+	// razoring margins indexed by remaining depth (no razoring at depth 0)
+	// razoring is applied up to depth RAZOR_MARGINS.length - 1
+	public static final int[] RAZOR_MARGINS = { 0, 300, 400, 600 };
+	
+	// internal iterative deepening: minimum depth and depth reduction
+	public static final int IID_DEPTH = 5;
+	public static final int IID_REDUCTION = 2;
+	
+	// singular extensions: minimum depth, maximum depth difference of the hash entry
+	// and margin per ply below the hash score for the exclusion search
+	public static final int SINGULAR_DEPTH = 6;
+	public static final int SINGULAR_DEPTH_MARGIN = 3;
+	public static final int SINGULAR_MARGIN = 2;
+	
+	// ProbCut: minimum depth, margin above beta and depth reduction of the shallow search
+	public static final int PROBCUT_DEPTH = 5;
+	public static final int PROBCUT_MARGIN = 200;
+	public static final int PROBCUT_REDUCTION = 4;
+	
+	// quiescent search: margin added to the captured piece value for delta pruning
+	public static final int DELTA_MARGIN = 200;
+	// quiescent search: evasions are searched for the first plies only
+	public static final int MAX_QUIESCENT_CHECKS = 8;
+	
+	// SEE pruning in alphaBeta, applied up to SEE_PRUNING_DEPTH remaining plies
+	// a move is skipped if its exchange loses more than margin * remaining depth
+	public static final int SEE_PRUNING_DEPTH = 3;
+	public static final int SEE_CAPTURE_MARGIN = 100;
+	public static final int SEE_QUIET_MARGIN = 50;
+
+	// history tables: limit of an entry, maximum bonus per update
+	// and bonus per squared remaining depth
+	public static final int HISTORY_MAX = 16384;
+	public static final int HISTORY_MAX_BONUS = 1200;
+	public static final int HISTORY_BONUS_SCALE = 32;
+
+	// parallel search with several threads
+	public static final int PARALLEL_LAZY_SMP = 0;
+	public static final int PARALLEL_YBWC = 1;
+	public static final int PARALLEL_ABDADA = 2;
+	public static final int PARALLEL_ROOT_MOVES = 3;
+	// YBWC: minimum remaining depth of a split point
+	public static final int SPLIT_DEPTH = 4;
+	// YBWC: miliseconds between time checks while waiting for the helpers
+	public static final long SPLIT_WAIT = 5;
+	// speculative pondering: depth of the searches ordering the opponent replies
+	public static final int PONDER_REPLY_DEPTH = 3;
+	// ABDADA: minimum remaining depth for marking busy nodes and deferring moves
+	public static final int ABDADA_DEPTH = 3;
+
+	// bound types of hash entries
+	public static final byte HASH_EXACT = 0;
+	public static final byte HASH_LOWER = 1;
+	public static final byte HASH_UPPER = 2;
 	
 	// max 2000000 moves ~= 38 MB
 	// in practice, the hash holds 20000 - 30000
@@ -1,7 +1,18 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  *
@@ -32,18 +43,47 @@ public class Engine implements Definitions, Evaluation {
 
     
     /** Killer Moves */
-    private Move[] primaryKillerMoves;
-    private Move[] secondaryKillerMoves;
+    // packed moves indexed by distance from the root (0 if none)
+    private int[] primaryKillerMoves;
+    private int[] secondaryKillerMoves;
+    
+    /** Counter moves */
+    // quiet move refuting the previous move: piece moving (+6), destination line, destination col
+    private Move counterMoves[][][];
     
     /** History moves */
-    // initial line, initial col, destination line, destination col
-    private int historyMoves[][][][];
-    // max history freq
-    private int maxHistoryFreq;
+    // side to move (white 0, black 1), initial square, destination square
+    // kept between moves and aged before every search
+    private int historyMoves[][][];
+    
+    /** Continuation history */
+    // [moves 1 and 2 plies back][previous piece and destination][current piece and destination]
+    private int continuationHistory[][][];
+    
+    /** Capture history */
+    // [piece moving and destination][type of the captured piece]
+    private int captureHistory[][];
+    
+    /** Moves played on the current search path, indexed by distance from the root */
+    private Move[] pathMoves;
 	
     /** Hash table */
     TranspositionTable hashTable;
     
+    /** Triangular principal variation table */
+    // line i holds the principal variation from distance i to the root, ending at pvLength[i]
+    private Move[][] pvTable;
+    private int[] pvLength;
+    /** Principal variation of the last completed iteration */
+    private Move[] previousPV;
+    private int previousPVLength;
+    /** Set while the search follows the previous principal variation */
+    private boolean followPV;
+    
+    /** Move excluded from the search of a node, indexed by distance from the root */
+    // used by the singular extension search
+    private Move[] excludedMoves;
+    
 	/** Time available for current move */
 	long timeForMove;
 	/** Start of thinking time for current move */
@@ -51,13 +91,58 @@ public class Engine implements Definitions, Evaluation {
 	/** Used for hard stop in alphaBeta */
 	long timeCheckpoint;
 	/** Global variable used for hard stops of the iterative deepening */
-	private boolean stopThinking;
+	// volatile: the main engine sets it for the helper engines
+	private volatile boolean stopThinking;
+	
+	/** Lazy SMP: helper engines searching the same position on their own threads */
+	// they have their own board and ordering tables and share the hash table
+	private Engine[] helpers;
+	/** Set for helper engines: no output and no time management */
+	private boolean helper;
+	/** PARALLEL_LAZY_SMP, PARALLEL_YBWC, PARALLEL_ABDADA or PARALLEL_ROOT_MOVES */
+	private int parallelMode;
+	
+	/** Pondering: searches of the positions after the expected replies (none if not pondering) */
+	private ArrayList<PonderSearch> ponderSearches;
+	/** Helper engines pondering the other replies (speculative pondering) */
+	// they share the hash table of the main engine, which ponders the expected reply
+	private Engine[] ponderers;
+	/** Thread ranking the other replies and starting their ponder searches (null if none) */
+	private Thread ponderLauncher;
+	/** Set while the ponder search has no time limit */
+	// read before the time of the move, which is set before the flag is cleared
+	private volatile boolean pondering;
+	/** Set when the hash table was already cleared for the next move (before pondering) */
+	private boolean warmHash;
+	/** Set while searching after a ponder hit: the hard stop is always possible */
+	// the iteration running since pondering might take much more than the time for the move
+	private boolean ponderHitSearch;
+	/** Depth of the last completed iteration */
+	private int completedDepth;
+	/** Ponder hit: depth completed by the ponder helper whose search is taken over (0 if none) */
+	// its principal variation is copied to previousPV
+	private int resumeDepth;
+	
+	/** Number of root moves getting an exact score and a principal variation */
+	private int multiPV;
+	
+	/** YBWC: helper engines waiting for a split point (null when not splitting) */
+	// shared by the main engine and its helpers
+	private ConcurrentLinkedQueue<Engine> idleHelpers;
+	/** YBWC and root moves: threads of the helpers, one for every helper */
+	private ExecutorService splitPool;
+	/** YBWC: split point searched by the engine (null if none) */
+	private SplitPoint splitPoint;
 	
 	
 	/** Auxiliary class for Iterative Deepening algorithm */
 	private class EvaluatedMove implements Comparable<EvaluatedMove> {
 		Move m;
 		int evaluation;
+		/** Nodes searched for the move (root moves only) */
+		int nodes;
+		/** Principal variation starting with the move (multi-PV root moves only) */
+		String pv;
 		
 		EvaluatedMove(Move move, int score) {
 			m = move;
@@ -74,53 +159,228 @@ public class Engine implements Definitions, Evaluation {
 	}
 	
 	
-	/** Hash Entry: sizeof = 20 bytes */
-	private class TranspositionEntry {
-		long zobrist;
-		Move move;
-		byte depth;
-		int eval;
+	/**
+	 *  YBWC split point: a node whose remaining moves are searched by several engines
+	 *  The engine creating it is the owner; the shared fields are guarded by the split point
+	 *  
+	 */
+	private class SplitPoint {
+		/** Split point of the owner when it was created (null if none) */
+		final SplitPoint parent;
+		/** Position, repetition history and moves leading to the node */
+		final Board board;
+		final Stack<Long> repetitionHistory;
+		final Move[] pathMoves;
+		final ArrayList<Move> moves;
+		/** Moves searched without a cutoff, for the history malus of the owner */
+		final ArrayList<Move> searchedMoves;
+		final int ply;
+		final int rootDistance;
+		final int beta;
+		final boolean inCheck;
+		/** Index of the next move to search */
+		int next;
+		int alpha;
+		int bestScore;
+		/** Move raising alpha (null if none) and move causing the cutoff */
+		Move bestMove;
+		Move cutoffMove;
+		volatile boolean cutoff;
+		/** Helpers still searching the split point */
+		int workers;
+		
+		SplitPoint(Board board, ArrayList<Move> moves, int next, int ply, int rootDistance,
+				int alpha, int beta, int bestScore, Move bestMove, boolean inCheck, ArrayList<Move> searchedMoves) {
+			this.parent = splitPoint;
+			this.board = new Board(board);
+			this.repetitionHistory = new Stack<Long>();
+			this.repetitionHistory.addAll(Engine.this.repetitionHistory);
+			this.pathMoves = Arrays.copyOf(Engine.this.pathMoves, rootDistance);
+			this.moves = moves;
+			this.searchedMoves = searchedMoves;
+			this.next = next;
+			this.ply = ply;
+			this.rootDistance = rootDistance;
+			this.alpha = alpha;
+			this.beta = beta;
+			this.bestScore = bestScore;
+			this.bestMove = bestMove;
+			this.inCheck = inCheck;
+		}
+		
+		/** Tests if the search of the split point has to stop: cutoff here or above, or hard stop of the owner */
+		boolean stopped() {
+			return cutoff || stopThinking || (parent != null && parent.stopped());
+		}
+		
+		/** Sets the principal variation of the owner: a new best move followed by the line of the engine searching it */
+		void updatePV(Move m, Engine engine) {
+			Engine.this.updatePV(m, rootDistance, engine);
+		}
+	}
+	
+	
+	/** Search of the position after an opponent reply, running on its own thread while pondering */
+	private class PonderSearch {
+		final Engine engine;
+		final Move reply;
+		final Board board;
+		/** Zobrist key of the position after the reply */
+		final long zobrist;
+		Thread thread;
+		/** Best move found (set when the thread is over) */
+		Move result;
+		
+		PonderSearch(Engine engine, Move reply, Board board) {
+			this.engine = engine;
+			this.reply = reply;
+			this.board = new Board(board);
+			this.board.makeMove(reply);
+			this.zobrist = this.board.Zobrist_Key;
+		}
+		
+		void start() {
+			thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					result = engine.iterativeDeepening(board);
+				}
+			});
+			thread.start();
+		}
+		
+		/** Stops the search and waits for the thread (the search might not have started yet) */
+		// the search is still pondering when it stops, so it prints nothing
+		void stop() {
+			while ( thread.isAlive() ) {
+				engine.stopThinking = true;
+				try {
+					thread.join(SPLIT_WAIT);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+			engine.pondering = false;
+		}
+	}
+	
+	
+	/**
+	 *  Root moves searched in parallel by the main engine and its helpers
+	 *  Moves are taken in the order of the bestMoves list; alpha is shared
+	 *  without locking, the other fields are guarded by the object
+	 *  
+	 */
+	private class RootSplit {
+		final ArrayList<EvaluatedMove> moves;
+		final int ply;
+		final int beta;
+		/** Index of the next root move to search */
+		final AtomicInteger next;
+		final AtomicInteger alpha;
+		/** Exact scores of the iteration, best first */
+		final ArrayList<Integer> scores;
+		int bestScore;
+		volatile boolean cutoff;
+		
+		RootSplit(int next, int ply, int alpha, int beta, int bestScore, ArrayList<Integer> scores) {
+			this.moves = bestMoves;
+			this.ply = ply;
+			this.beta = beta;
+			this.next = new AtomicInteger(next);
+			this.alpha = new AtomicInteger(alpha);
+			this.scores = scores;
+			this.bestScore = bestScore;
+		}
 		
-		TranspositionEntry(long zobrist, Move move, byte depth, int eval) {
+		/** Sets the principal variation of the main engine: a new best move followed by the line of the engine searching it */
+		void updatePV(Move m, Engine engine) {
+			Engine.this.updatePV(m, 0, engine);
+		}
+	}
+	
+	
+	/** Hash Entry: sizeof = 21 bytes */
+	// entries are immutable, so threads can share them without locking
+	private class TranspositionEntry {
+		final long zobrist;
+		final Move move;
+		final byte depth;
+		final int eval;
+		/** HASH_EXACT, HASH_LOWER or HASH_UPPER */
+		final byte bound;
+		
+		TranspositionEntry(long zobrist, Move move, byte depth, int eval, byte bound) {
 			this.zobrist = zobrist;
 			this.move = move;
 			this.depth = depth;
 			this.eval = eval;
+			this.bound = bound;
 		}
 	}
 	
 	
 	/** Hash Table */
+	// shared by all search threads: every slot is read once per access,
+	// a lost update only costs an entry
 	private class TranspositionTable {
 		int size;
 		TranspositionEntry[] transpositions;
+		/** ABDADA: number of threads searching the position of every slot */
+		// kept next to the entries, since these are immutable and replaced
+		AtomicIntegerArray busy;
+		/** Search that stored the entry of every slot */
+		int[] generations;
+		/** Current search, advanced for every new move searched */
+		int generation;
 		
 		TranspositionTable(int size) {
 			this.size = size;
 			transpositions = new TranspositionEntry[size];
+			busy = new AtomicIntegerArray(size);
+			generations = new int[size];
+		}
+		
+		// entries stored from now on belong to a new search
+		void newSearch() {
+			generation++;
+		}
+		
+		// ABDADA: a thread starts searching the position
+		void enter(long zobrist) {
+			busy.incrementAndGet((int) (zobrist % size));
+		}
+		
+		// ABDADA: a thread is done searching the position
+		void leave(long zobrist) {
+			busy.decrementAndGet((int) (zobrist % size));
+		}
+		
+		// ABDADA: tests if the position is being searched by another thread
+		// (or by a position sharing its slot)
+		boolean isBusy(long zobrist) {
+			return busy.get((int) (zobrist % size)) > 0;
 		}
 		
 		// replace by depth
 		void addTransposition(TranspositionEntry t) {
 			int key = (int) (t.zobrist % size);
-			if (transpositions[key] == null)
+			TranspositionEntry old = transpositions[key];
+			// entries of older searches are always replaced
+			// in the current search, only if new depth is greater, also in case of collision,
+			// so that quiescent entries never evict the main search ones
+			if (old == null || generations[key] != generation || old.depth <= t.depth) {
 				transpositions[key] = t;
-			else {
-				// replace in case of collision
-				if (transpositions[key].zobrist != t.zobrist)
-					transpositions[key] = t;
-				// replace only if new depth is greater
-				else
-					if (transpositions[key].depth <= t.depth)
-						transpositions[key] = t;
+				generations[key] = generation;
 			}
 		}
 		
 		TranspositionEntry getEntry(long zobrist) {
 			int key = (int) (zobrist % size);
-			if (transpositions[key] != null)
-				if (transpositions[key].zobrist == zobrist)
-					return transpositions[key];
+			TranspositionEntry entry = transpositions[key];
+			if (entry != null)
+				if (entry.zobrist == zobrist)
+					return entry;
 			
 			return null;
 		}
@@ -149,13 +409,140 @@ public class Engine implements Definitions, Evaluation {
 		timeCheckpoint = 0;
 		stopThinking = false;
         nodesSearched = 0;
-        
-        primaryKillerMoves = new Move[MAX_KILLERS];
-        secondaryKillerMoves = new Move[MAX_KILLERS];
-        historyMoves = new int[12][12][12][12];		// 8 x 8 + borders
-        maxHistoryFreq = 0;
+        helpers = new Engine[0];
+        helper = false;
+        parallelMode = PARALLEL_LAZY_SMP;
+        multiPV = 1;
+        ponderSearches = null;
+        ponderers = new Engine[0];
         
         hashTable = new TranspositionTable(HASH_SIZE);
+        allocateSearchTables();
+	}
+	
+	
+	/**
+	 *  Creates a helper engine for the Lazy SMP search
+	 *  It shares the hash table of the main engine
+	 *  
+	 *  @param Engine the main engine
+	 *  
+	 */
+	private Engine(Engine main) {
+		book = null;
+		history = "";
+		repetitionHistory = new Stack<Long>();
+		useOpeningBook = false;
+		bestMoves = null;
+		stopThinking = false;
+		nodesSearched = 0;
+		helpers = new Engine[0];
+		helper = true;
+		multiPV = 1;
+		ponderSearches = null;
+		ponderers = new Engine[0];
+		
+		hashTable = main.hashTable;
+		allocateSearchTables();
+	}
+	
+	
+	/** Allocates the move ordering and search tables of an engine */
+	private void allocateSearchTables() {
+        primaryKillerMoves = new int[MAX_PLY];
+        secondaryKillerMoves = new int[MAX_PLY];
+        historyMoves = new int[2][64][64];
+        counterMoves = new Move[13][12][12];
+        continuationHistory = new int[2][13 * 64][13 * 64];
+        captureHistory = new int[13 * 64][7];
+        pathMoves = new Move[MAX_PLY];
+        
+        excludedMoves = new Move[MAX_PLY];
+        pvTable = new Move[MAX_PLY][MAX_PLY];
+        pvLength = new int[MAX_PLY];
+        previousPV = new Move[MAX_PLY];
+        previousPVLength = 0;
+        followPV = false;
+	}
+	
+	
+	/**
+	 *  Sets the number of search threads (Lazy SMP)
+	 *  The main thread is helped by threads - 1 helper engines
+	 *  
+	 *  @param int number of threads
+	 *  
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			threads = 1;
+		helpers = new Engine[threads - 1];
+		for (int i = 0; i < helpers.length; i++)
+			helpers[i] = new Engine(this);
+	}
+	
+	
+	/**
+	 *  Sets the parallel search used with several threads
+	 *  
+	 *  @param int PARALLEL_LAZY_SMP, PARALLEL_YBWC, PARALLEL_ABDADA or PARALLEL_ROOT_MOVES
+	 *  
+	 */
+	public void setParallelMode(int mode) {
+		parallelMode = mode;
+	}
+	
+	
+	/**
+	 *  Sets the number of principal variations (multi-PV)
+	 *  The first root moves get exact scores and are reported separately
+	 *  
+	 *  @param int number of principal variations
+	 *  
+	 */
+	public void setMultiPV(int lines) {
+		multiPV = Math.max(lines, 1);
+	}
+	
+	
+	/**
+	 *  Sets the number of opponent replies searched while pondering
+	 *  The main engine ponders the expected reply and a helper engine ponders
+	 *  every other reply, on its own thread (speculative pondering)
+	 *  
+	 *  @param int number of replies
+	 *  
+	 */
+	public void setPonderReplies(int replies) {
+		if (replies < 1)
+			replies = 1;
+		ponderers = new Engine[replies - 1];
+		for (int i = 0; i < ponderers.length; i++)
+			ponderers[i] = new Engine(this);
+	}
+	
+	
+	/** Nodes searched for the current move by the main engine and its helpers */
+	private long totalNodes() {
+		long nodes = nodesSearched;
+		for (int i = 0; i < helpers.length; i++)
+			nodes += helpers[i].nodesSearched;
+		return nodes;
+	}
+	
+	
+	/** Sets the hard stop when the time for the move is over (only if a hard stop is possible) */
+	// a ponder search has no time limit
+	private void checkTime() {
+		if ( ! pondering && (movesPlayed > MIDGAME_MOVES || ponderHitSearch) && 
+				System.currentTimeMillis() - startTime >= timeForMove )
+			stopThinking = true;
+	}
+	
+	
+	/** Tests if the search has to stop: hard stop, or cutoff of the split point being searched */
+	private boolean aborted() {
+		return stopThinking || (splitPoint != null && splitPoint.stopped());
 	}
 	
 	
@@ -164,11 +551,11 @@ public class Engine implements Definitions, Evaluation {
 	 *  This method is only called when there are no valid moves
 	 *  
 	 *  @param Board the chessboard
-	 *  @param int the ply where mate / stalemate is found
+	 *  @param int distance from the root where mate / stalemate is found
 	 *  @return value of mate / stalemate
 	 *  
 	 */
-	int mateCheck(Board board, int ply) {
+	int mateCheck(Board board, int rootDistance) {
 		boolean control;
 		// check if king is in check (or if a check situation was already present)
 		if (board.toMove == WHITE) {
@@ -176,14 +563,14 @@ public class Engine implements Definitions, Evaluation {
 			control = board.isAttacked(board.whiteKingLine, board.whiteKingCol, BLACK);
 			if (control) {
 				// negative value for black; faster mate is more valuable
-				return MATE_VALUE + ply * PAWN_VALUE / 10;
+				return MATE_VALUE - rootDistance;
 			}
 		}
 		else {
 			control = board.isAttacked(board.blackKingLine, board.blackKingCol, WHITE);
 			if (control) {
 				// positive value for white; faster mate is more valuable
-				return - (MATE_VALUE + ply * PAWN_VALUE / 10);
+				return - (MATE_VALUE - rootDistance);
 			}
 		}
 		// stalemate value is usually 0
@@ -211,45 +598,209 @@ public class Engine implements Definitions, Evaluation {
 	}
 
 	
-	// history bonus for ordinary moves
-	private int historyBonus(int x) {
-		// for [c..d] -> [e..f]
-		float c, d, e, f, a, b;
-		c = 0;
-		d = maxHistoryFreq;
-		e = 0;
-		f = MAX_HISTORY_BONUS;
-		a = (f - e) / (d - c);
-		b = e - a * c;
-		return Math.round(a * x + b);
+	/**
+	 *  Converts a mate score from distance to the root into distance to the current node
+	 *  Used when storing a score in the hash table, so mate lengths stay correct
+	 *  when the entry is reached from another path or depth
+	 *  
+	 */
+	private int scoreToHash(int score, int rootDistance) {
+		if ( score >= MATE_BOUND )
+			return score + rootDistance;
+		if ( score <= - MATE_BOUND )
+			return score - rootDistance;
+		return score;
+	}
+	
+	
+	/** Converts a mate score read from the hash table back into distance to the root */
+	private int scoreFromHash(int score, int rootDistance) {
+		if ( score >= MATE_BOUND )
+			return score - rootDistance;
+		if ( score <= - MATE_BOUND )
+			return score + rootDistance;
+		return score;
+	}
+	
+	
+	/** Sets the principal variation at the given distance from the root: a new best move followed by the child line */
+	private void updatePV(Move m, int rootDistance) {
+		updatePV(m, rootDistance, this);
+	}
+	
+	
+	/** Sets the principal variation at the given distance from the root from the child line of the engine searching the move */
+	private void updatePV(Move m, int rootDistance, Engine engine) {
+		pvTable[rootDistance][rootDistance] = m;
+		for (int i = rootDistance + 1; i < engine.pvLength[rootDistance + 1]; i++)
+			pvTable[rootDistance][i] = engine.pvTable[rootDistance + 1][i];
+		pvLength[rootDistance] = engine.pvLength[rootDistance + 1];
+	}
+	
+	
+	/**
+	 *  Prints the thinking output of a completed iteration
+	 *  Multi-PV: one line for every principal variation, best first
+	 *  
+	 *  @param int depth of the iteration
+	 *  
+	 */
+	private void printThinking(int depth) {
+		long time = (System.currentTimeMillis() - startTime) / 10;
+		
+		System.out.println(depth + " " + bestMoves.get(0).evaluation + " " + time + " "
+                + totalNodes() + "    " + principalVariation());
+		for (int i = 1; i < multiPV && i < bestMoves.size(); i++)
+			System.out.println(depth + " " + bestMoves.get(i).evaluation + " " + time + " "
+	                + totalNodes() + "    " + bestMoves.get(i).pv);
+	}
+	
+	
+	/** Returns the principal variation of the last completed iteration */
+	private String principalVariation() {
+		String pv = "";
+		for (int i = 0; i < previousPVLength; i++)
+			pv += previousPV[i] + " ";
+		return pv.trim();
+	}
+	
+	
+	/** Saturating history update: the closer an entry is to HISTORY_MAX, the smaller the effect */
+	private static int gravity(int entry, int bonus) {
+		return entry + bonus - entry * Math.abs(bonus) / HISTORY_MAX;
+	}
+	
+	
+	/** Index of a square in the history tables (0 - 63) */
+	private static int square(int line, int col) {
+		return (line - LINE1) * 8 + col - COLA;
+	}
+	
+	
+	/** Index of a move in the continuation and capture history: piece moving (+6) and destination square */
+	private static int pieceSquare(Move m) {
+		return (m.pieceMoving + 6) * 64 + square(m.destinationLine, m.destinationCol);
+	}
+	
+	
+	/** History entry of a quiet move, for the side making it */
+	private int historyScore(Move m) {
+		return historyMoves[m.pieceMoving > 0 ? 0 : 1]
+		                   [square(m.initialLine, m.initialCol)][square(m.destinationLine, m.destinationCol)];
+	}
+	
+	
+	/** Adds a bonus (or a malus, if negative) to the history of a quiet move */
+	private void updateHistory(Move m, int bonus) {
+		int[] entries = historyMoves[m.pieceMoving > 0 ? 0 : 1][square(m.initialLine, m.initialCol)];
+		int destination = square(m.destinationLine, m.destinationCol);
+		
+		entries[destination] = gravity(entries[destination], bonus);
+	}
+	
+	
+	/**
+	 *  Ages the history tables before a new search
+	 *  Entries are halved, so the ordering learned on previous moves
+	 *  still helps but is soon replaced by the current one
+	 *  
+	 */
+	private void ageHistory() {
+		int i, j, k;
+		
+		for (i = 0; i < 2; i++)
+			for (j = 0; j < 64; j++)
+				for (k = 0; k < 64; k++)
+					historyMoves[i][j][k] /= 2;
+		for (i = 0; i < 2; i++)
+			for (j = 0; j < 13 * 64; j++)
+				for (k = 0; k < 13 * 64; k++)
+					continuationHistory[i][j][k] /= 2;
+		for (j = 0; j < 13 * 64; j++)
+			for (k = 0; k < 7; k++)
+				captureHistory[j][k] /= 2;
+	}
+	
+	
+	/** Tests if a move is quiet: no capture and no promotion */
+	private static boolean isQuiet(Move m) {
+		return m.pieceCaptured == EMPTY_SQUARE && m.moveType < PROMOTION_QUEEN;
+	}
+	
+	
+	/**
+	 *  Returns the continuation history score of a quiet move:
+	 *  the sum of its entries following the moves played 1 and 2 plies back
+	 *  
+	 *  @param Move the quiet move
+	 *  @param int distance from the root of the current position
+	 *  
+	 */
+	private int continuationScore(Move m, int rootDistance) {
+		int score = 0;
+		int current = pieceSquare(m);
+		
+		for (int i = 1; i <= 2 && i <= rootDistance; i++)
+			score += continuationHistory[i - 1][pieceSquare(pathMoves[rootDistance - i])][current];
+		return score;
+	}
+	
+	
+	/**
+	 *  Adds a bonus (or a malus, if negative) to the continuation history of a quiet move
+	 *  
+	 */
+	private void updateContinuationHistory(Move m, int rootDistance, int bonus) {
+		int current = pieceSquare(m);
+		int[] entries;
+		
+		for (int i = 1; i <= 2 && i <= rootDistance; i++) {
+			entries = continuationHistory[i - 1][pieceSquare(pathMoves[rootDistance - i])];
+			entries[current] = gravity(entries[current], bonus);
+		}
+	}
+	
+	
+	/** Adds a bonus (or a malus, if negative) to the capture history of a capture */
+	private void updateCaptureHistory(Move m, int bonus) {
+		int[] entries = captureHistory[pieceSquare(m)];
+		int victim = Math.abs(m.pieceCaptured);
+		
+		entries[victim] = gravity(entries[victim], bonus);
 	}
 	
 	
 	/** Returns the score for a move 
 	 * 
-	 *  Killer moves, MVV/LVA captures, non-captures
+	 *  Hash move, killer moves, counter moves, MVV/LVA captures, non-captures
+	 *  Previous moves are taken from the search path (none at distance 0)
 	 * 
 	 * */
-	private int getMoveScore(Move m1, int ply, long zobrist) {
+	private int getMoveScore(Move m1, Move hashMove, int rootDistance) {
 		int score = 0;
 		byte type = m1.moveType;
 		byte piece = m1.pieceMoving;
 		byte capture = m1.pieceCaptured;
-		TranspositionEntry te;
 		
 		// treat hash move separately
-		te = hashTable.getEntry(zobrist);
-		if (te != null)
-			if (te.move.equals(m1))
-				return HASH_SCORE;
+		if ( hashMove != null && hashMove.equals(m1) )
+			return HASH_SCORE;
 		
 		// treat killer moves separately
-		if ( primaryKillerMoves[ply] != null )
-			if ( primaryKillerMoves[ply].equals(m1) )
-				return PRIMARY_KILLER_SCORE;
-		if ( secondaryKillerMoves[ply] != null )
-			if ( secondaryKillerMoves[ply].equals(m1) )
-				return SECONDARY_KILLER_SCORE;
+		int packed = m1.pack();
+		if ( primaryKillerMoves[rootDistance] == packed )
+			return PRIMARY_KILLER_SCORE;
+		if ( secondaryKillerMoves[rootDistance] == packed )
+			return SECONDARY_KILLER_SCORE;
+		
+		// counter move to the previous move
+		if ( rootDistance > 0 ) {
+			Move previousMove = pathMoves[rootDistance - 1];
+			Move counter = counterMoves[previousMove.pieceMoving + 6]
+			                           [previousMove.destinationLine][previousMove.destinationCol];
+			if ( counter != null && counter.equals(m1) )
+				return COUNTER_MOVE_SCORE;
+		}
 		
 		if (capture < 0)
 			capture = (byte) -capture;
@@ -260,11 +811,21 @@ public class Engine implements Definitions, Evaluation {
 			// if no piece captured
 			if ( capture == EMPTY_SQUARE ) {
 				score = ORDINARY_PIECE_SCORES[piece];
-				score += historyBonus(historyMoves[m1.initialLine][m1.initialCol]
-				                           		  [m1.destinationLine][m1.destinationCol]);
+				// history and continuation history, at most MAX_HISTORY_BONUS either way
+				score += (historyScore(m1) + continuationScore(m1, rootDistance)) 
+						* MAX_HISTORY_BONUS / (3 * HISTORY_MAX);
 			}
-			else
+			else {
+				// MVV/LVA adjusted by the capture history
 				score = CAPTURE_SCORES[capture][piece];
+				score += captureHistory[pieceSquare(m1)][capture] * MAX_CAPTURE_HISTORY_BONUS / HISTORY_MAX;
+				// a failing capture still comes before the non-captures
+				// and a successful one after the queen promotion
+				if ( score < MIN_CAPTURE_SCORE )
+					score = MIN_CAPTURE_SCORE;
+				else if ( score > MAX_CAPTURE_SCORE )
+					score = MAX_CAPTURE_SCORE;
+			}
 		}
 		else {
 			switch ( type ) {
@@ -281,6 +842,57 @@ public class Engine implements Definitions, Evaluation {
 	
 	
 	
+	/**
+	 *  Updates the move ordering tables with a move that caused a beta cutoff
+	 *  
+	 *  @param Move the move causing the cutoff
+	 *  @param int the current ply
+	 *  @param int distance from the root
+	 *  @param ArrayList<Move> moves searched before the cutoff move
+	 *  
+	 */
+	private void storeCutoffMove(Move aux, int ply, int rootDistance, ArrayList<Move> searchedMoves) {
+		int bonus = Math.min(HISTORY_BONUS_SCALE * ply * ply, HISTORY_MAX_BONUS);
+		Move move;
+		
+		// add killer move for current distance from the root
+		int packed = aux.pack();
+		if ( primaryKillerMoves[rootDistance] != packed ) {
+			// move primary killer down; add new primary killer
+			secondaryKillerMoves[rootDistance] = primaryKillerMoves[rootDistance];
+			primaryKillerMoves[rootDistance] = packed;
+		}
+		
+		if ( isQuiet(aux) ) {
+			// add counter move
+			if ( rootDistance > 0 ) {
+				Move previousMove = pathMoves[rootDistance - 1];
+				counterMoves[previousMove.pieceMoving + 6]
+				            [previousMove.destinationLine][previousMove.destinationCol] = aux;
+			}
+			
+			// history and continuation history: bonus for the cutoff move
+			updateHistory(aux, bonus);
+			updateContinuationHistory(aux, rootDistance, bonus);
+		}
+		// capture history: bonus for the cutoff move
+		else if ( aux.pieceCaptured != EMPTY_SQUARE )
+			updateCaptureHistory(aux, bonus);
+		
+		// malus for the moves that failed to produce the cutoff
+		for (int i = 0; i < searchedMoves.size(); i++) {
+			move = searchedMoves.get(i);
+			if ( isQuiet(move) ) {
+				updateHistory(move, - bonus);
+				updateContinuationHistory(move, rootDistance, - bonus);
+			}
+			else if ( move.pieceCaptured != EMPTY_SQUARE )
+				updateCaptureHistory(move, - bonus);
+		}
+	}
+	
+	
+	
 	/**
 	 * 	Sorts all the generated moves in a descending order according to their value.
 	 *  Based on but not restricted to the MVV LVA sorting
@@ -289,10 +901,11 @@ public class Engine implements Definitions, Evaluation {
 	 *  !!! Killer moves and hash move are removed because they are treated separately
 	 * 
 	 * @param ArrayList<Move> a list of all legal moves
-	 * @param ply the current ply
+	 * @param Move the hash move (null if none)
+	 * @param int distance from the root
 	 * 
 	 */
-	void sortMovesHeuristic(ArrayList<Move> moves, int ply, long zobrist) {
+	void sortMovesHeuristic(ArrayList<Move> moves, Move hashMove, int rootDistance) {
 		
 		ArrayList<EvaluatedMove> sortedMoves = new ArrayList<EvaluatedMove>(50);
 		Move aux;
@@ -303,7 +916,7 @@ public class Engine implements Definitions, Evaluation {
 		it = moves.iterator();
 		while (it.hasNext()) {
 			aux = it.next();
-			sortedMoves.add(new EvaluatedMove(aux, getMoveScore(aux, ply, zobrist)));
+			sortedMoves.add(new EvaluatedMove(aux, getMoveScore(aux, hashMove, rootDistance)));
 		}
 		
 		moves.clear();
@@ -329,10 +942,11 @@ public class Engine implements Definitions, Evaluation {
 	 *  Does not remove killers and hash move
 	 * 
 	 * @param ArrayList<Move> a list of all legal moves
-	 * @param ply the current ply
+	 * @param Move the hash move (null if none)
+	 * @param int distance from the root
 	 * 
 	 */
-	void sortQuisMovesHeuristic(ArrayList<Move> moves, int ply, long zobrist) {
+	void sortQuisMovesHeuristic(ArrayList<Move> moves, Move hashMove, int rootDistance) {
 		
 		ArrayList<EvaluatedMove> sortedMoves = new ArrayList<EvaluatedMove>(50);
 		Move aux;
@@ -343,7 +957,7 @@ public class Engine implements Definitions, Evaluation {
 		it = moves.iterator();
 		while (it.hasNext()) {
 			aux = it.next();
-			sortedMoves.add(new EvaluatedMove(aux, getMoveScore(aux, ply, zobrist)));
+			sortedMoves.add(new EvaluatedMove(aux, getMoveScore(aux, hashMove, rootDistance)));
 		}
 		
 		moves.clear();
@@ -727,361 +1341,1158 @@ public class Engine implements Definitions, Evaluation {
 	
 	
 	/**
-	 *	Negamax algorithm with alphabeta prunning
+	 *  Searches the root moves in the order of the bestMoves list
+	 *  Sets the evaluation of the moves raising alpha and
+	 *  the number of nodes searched for every move
+	 *  Multi-PV: alpha is the lowest of the multiPV best scores
+	 *  Fail soft: the result may be outside the window
 	 *
 	 *  @param int alpha
 	 *  @param int beta
-	 *  @param Board the board
 	 *  @param int current ply
-	 *  @param Move the grandfather of all moves (level 1 in tree) on the current branch
+	 *  @param Board the board
 	 * 
 	 *  @return final evaluation
 	 *
 	 */
-	int alphaBeta(int alpha, int beta, int ply, Board board, Move firstMove) {
-
-		ArrayList<Move> moves;
-		int numMoves, eval;
-		Move aux;
-		Move hashMove = null;
-		boolean mateCheckFlag = true;
-		
-		// update checkpoint
-		timeCheckpoint--;
-		
-		// test for hard stop
-		if (timeCheckpoint == 0) {
-			if ( (movesPlayed > MIDGAME_MOVES) && System.currentTimeMillis() - startTime >= timeForMove )
-				stopThinking = true;
-			timeCheckpoint = TIME_CHECK_INTERVAL;
-		}
-		
-		// hard stop
-		if (stopThinking)
-			return 0;
+	int rootSearch(int alpha, int beta, int ply, Board board) {
+		int eval;
+		int bestScore = - INF;
+		EvaluatedMove rootMove;
+		ArrayList<Integer> scores = new ArrayList<Integer>();
 		
 		// update nodes searched
 		nodesSearched++;
+		pvLength[0] = 0;
 		
-		// if this is the first alphaBeta recursive call
-		// the moves are taken from the bestMoves list
-		if ( firstMove == null ) {
-			moves = new ArrayList<Move>();
-			Iterator<EvaluatedMove> it = bestMoves.iterator();
-			while (it.hasNext()) {
-				moves.add(it.next().m);
-			}
-			numMoves = moves.size();
+		// loop through all available moves
+		for (int i = 0; i < bestMoves.size(); ++i) {
+			rootMove = bestMoves.get(i);
 			
-			// loop through all available moves
-			for (int i = 0; i < numMoves; ++i) {
-				aux = moves.get(i);
+			// the other moves are shared with the helpers once the first one is searched
+			if ( i == 1 && splitPool != null && parallelMode == PARALLEL_ROOT_MOVES )
+				return parallelRootSearch(alpha, beta, ply, bestScore, scores, board);
 			
-				board.makeMove(aux);
-				
-				if (repetitionCheck(board.Zobrist_Key))
-					// take contempt factor into consideration
-					eval = CONTEMPT_FACTOR;	
-				else {
-					// first, add zobrist to repetition history
-					repetitionHistory.push(board.Zobrist_Key);
-					// this is where the firstMove variable is initialized
-					// with the current first level move
-					eval = - alphaBeta(-beta, -alpha, ply-1, board, aux);
-					// remove zobrist from repetition history
-					repetitionHistory.pop();
-				}
-				
-				board.undoMove(aux);
-				
-				// beta cutoff
-				if ( eval >= beta ) {
-					// never gets here?
-					return beta;
-				}
-				if ( eval > alpha) {
-					alpha = eval;
-					// since it is the first alpha beta call
-					// update the score for current move
-					bestMoves.get(i).evaluation = alpha; 
-				}
+			eval = searchRootMove(rootMove, i == 0, alpha, beta, ply, board);
+			
+			// hard stop
+			if (stopThinking)
+				return alpha;
+			
+			// beta cutoff (only with an aspiration window)
+			// the move is kept as a lower bound, so the re-search starts with it
+			if ( eval >= beta ) {
+				rootMove.evaluation = eval;
+				return eval;
+			}
+			if ( eval > alpha) {
+				// update the score for current move
+				rootMove.evaluation = eval; 
+				if ( eval > bestScore )
+					updatePV(rootMove.m, 0);
+				alpha = rootAlpha(rootMove, eval, alpha, scores);
 			}
+			if ( eval > bestScore )
+				bestScore = eval;
 		}
 		
-		else {
-
-			// QUIESCENT SEARCH
-			if ( ply == 0 )
-				return quiescentSearch(alpha, beta, board);
-			
-			else {
-				
-				// PRE-MOVE GENERATION PHASE
-				// TEST KILLER MOVES AND HASH MOVE
-				
-				moves = new ArrayList<Move>();
-				
-				// hash move
-				TranspositionEntry te = hashTable.getEntry(board.Zobrist_Key);
-				if (te != null)
-					if ( board.moveExists(te.move) ) {
-						if ( te.depth >= ply )
-							return te.eval;
-						else
-							moves.add(te.move);
-					}
-				
-				// killer moves
-				if (primaryKillerMoves[ply] != null)
-					if ( board.moveExists(primaryKillerMoves[ply]) )
-						moves.add(primaryKillerMoves[ply]);
-				if (secondaryKillerMoves[ply] != null)
-					if ( board.moveExists(secondaryKillerMoves[ply]) )
-						moves.add(secondaryKillerMoves[ply]);
-				numMoves = moves.size();
-				if (numMoves > 0)
-					mateCheckFlag = false;
-
-				for (int i = 0; i < numMoves; ++i) {
-					aux = moves.get(i);
-					
-					board.makeMove(aux);
-					
-					if (repetitionCheck(board.Zobrist_Key))
-						// take contempt factor into consideration
-						eval = CONTEMPT_FACTOR;	
-					else {
-						// first, add zobrist to repetition history
-						repetitionHistory.push(board.Zobrist_Key);
-						// this is where the firstMove variable is initialized
-						// with the current first level move
-						eval = - alphaBeta(-beta, -alpha, ply-1, board, aux);
-						// remove zobrist from repetition history
-						repetitionHistory.pop();
-					}
+		return bestScore;
+	}
+	
+	
+	
+	/**
+	 *  Adds the exact score of a root move to the scores of the iteration
+	 *  Multi-PV: the principal variation of the move is kept for the output
+	 *
+	 *  @param EvaluatedMove the root move
+	 *  @param int its score
+	 *  @param int current alpha
+	 *  @param ArrayList<Integer> exact scores of the iteration, best first
+	 * 
+	 *  @return the new alpha: the best score or the lowest of the multiPV best scores
+	 *
+	 */
+	private int rootAlpha(EvaluatedMove rootMove, int eval, int alpha, ArrayList<Integer> scores) {
+		if ( multiPV > 1 ) {
+			rootMove.pv = rootMove.m.toString();
+			for (int i = 1; i < pvLength[1]; i++)
+				rootMove.pv += " " + pvTable[1][i];
+		}
+		
+		scores.add(eval);
+		Collections.sort(scores, Collections.reverseOrder());
+		if ( scores.size() < multiPV )
+			return alpha;
+		return scores.get(multiPV - 1);
+	}
+	
+	
+	
+	/**
+	 *  Searches a root move and sets the number of nodes searched for it
+	 *
+	 *  @param EvaluatedMove the root move
+	 *  @param boolean true for the first root move
+	 *  @param int alpha
+	 *  @param int beta
+	 *  @param int current ply
+	 *  @param Board the board
+	 * 
+	 *  @return evaluation of the move
+	 *
+	 */
+	private int searchRootMove(EvaluatedMove rootMove, boolean first, int alpha, int beta, int ply, Board board) {
+		int eval;
+		int nodes = nodesSearched;
+		
+		board.makeMove(rootMove.m);
+		
+		// the child line is empty unless the move is searched
+		pvLength[1] = 1;
+		// the best move of the previous iteration leads the principal variation
+		followPV = first && previousPVLength > 0 && rootMove.m.equals(previousPV[0]);
+		
+		if (repetitionCheck(board.Zobrist_Key))
+			// take contempt factor into consideration
+			eval = CONTEMPT_FACTOR;	
+		else {
+			// first, add zobrist to repetition history
+			repetitionHistory.push(board.Zobrist_Key);
+			pathMoves[0] = rootMove.m;
+			eval = - alphaBeta(-beta, -alpha, ply-1, 1, board);
+			// remove zobrist from repetition history
+			repetitionHistory.pop();
+		}
+		
+		board.undoMove(rootMove.m);
+		
+		// effort spent on the move, used for ordering in the next iteration
+		rootMove.nodes = nodesSearched - nodes;
+		
+		return eval;
+	}
+	
+	
+	
+	/**
+	 *  Searches the root moves after the first one on the main thread and
+	 *  on the helper threads, each with its own copy of the board
+	 *  Returns once every thread is done; the helpers are cancelled on a hard stop
+	 *
+	 *  @param int alpha
+	 *  @param int beta
+	 *  @param int current ply
+	 *  @param int score of the first move
+	 *  @param ArrayList<Integer> exact scores of the iteration (the first move's, if any)
+	 *  @param Board the board
+	 * 
+	 *  @return final evaluation
+	 *
+	 */
+	private int parallelRootSearch(int alpha, int beta, int ply, int bestScore, ArrayList<Integer> scores, Board board) {
+		final RootSplit rs = new RootSplit(1, ply, alpha, beta, bestScore, scores);
+		Future<?>[] tasks = new Future<?>[helpers.length];
+		
+		for (int i = 0; i < helpers.length; i++) {
+			final Engine engine = helpers[i];
+			final Board copy = new Board(board);
+			tasks[i] = splitPool.submit(new Runnable() {
+				@Override
+				public void run() {
+					engine.searchRootMoves(rs, copy);
+				}
+			});
+		}
+		
+		searchRootMoves(rs, board);
+		
+		// wait for the helpers, checking the time
+		for (int i = 0; i < tasks.length; i++) {
+			while (true) {
+				if (stopThinking)
+					for (int j = 0; j < helpers.length; j++)
+						helpers[j].stopThinking = true;
+				try {
+					tasks[i].get(SPLIT_WAIT, TimeUnit.MILLISECONDS);
+					break;
+				} catch (TimeoutException e) {
+					checkTime();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+					break;
+				} catch (ExecutionException e) {
+					e.printStackTrace();
+					break;
+				}
+			}
+		}
+		
+		// hard stop
+		if (stopThinking)
+			return alpha;
+		
+		return rs.bestScore;
+	}
+	
+	
+	
+	/**
+	 *  Searches root moves of a parallel root search until there are none left
+	 *  A move raising alpha gets its score and the principal variation of the main engine
+	 *
+	 *  @param RootSplit the shared root moves
+	 *  @param Board the board
+	 *
+	 */
+	private void searchRootMoves(RootSplit rs, Board board) {
+		EvaluatedMove rootMove;
+		int i, eval;
+		
+		while (true) {
+			i = rs.next.getAndIncrement();
+			if ( i >= rs.moves.size() || rs.cutoff || stopThinking )
+				break;
+			rootMove = rs.moves.get(i);
+			
+			eval = searchRootMove(rootMove, false, rs.alpha.get(), rs.beta, rs.ply, board);
+			
+			// the result of an interrupted search is not used
+			if (stopThinking)
+				break;
+			
+			synchronized (rs) {
+				// beta cutoff (only with an aspiration window)
+				// the move is kept as a lower bound, so the re-search starts with it
+				if ( eval >= rs.beta ) {
+					rootMove.evaluation = eval;
+					rs.bestScore = Math.max(eval, rs.bestScore);
+					rs.cutoff = true;
+					break;
+				}
+				if ( eval > rs.alpha.get() ) {
+					rootMove.evaluation = eval;
+					if ( eval > rs.bestScore )
+						rs.updatePV(rootMove.m, this);
+					rs.alpha.set(rootAlpha(rootMove, eval, rs.alpha.get(), rs.scores));
+				}
+				if ( eval > rs.bestScore )
+					rs.bestScore = eval;
+			}
+		}
+	}
+	
+	
+	
+	/**
+	 *	Negamax algorithm with alphabeta prunning
+	 *  Used below the root (see rootSearch)
+	 *  Fail soft: a fail low returns an upper bound below alpha
+	 *  and a fail high a lower bound above beta
+	 *
+	 *  @param int alpha
+	 *  @param int beta
+	 *  @param int current ply
+	 *  @param int distance from the root
+	 *  @param Board the board
+	 * 
+	 *  @return final evaluation
+	 *
+	 */
+	int alphaBeta(int alpha, int beta, int ply, int rootDistance, Board board) {
 
-					board.undoMove(aux);
-					
-					// beta cutoff
-					if ( eval >= beta ) {
+		ArrayList<Move> moves;
+		int numMoves, eval;
+		Move aux;
+		Move hashMove = null;
+		// best score found (fail soft)
+		int bestScore = - INF;
+		// move from the hash table and its singular extension
+		Move tableMove = null;
+		int extension = 0;
+		boolean mateCheckFlag = true;
+		boolean inCheck;
+		// ABDADA: children are marked as busy and busy moves are deferred
+		boolean abdada = parallelMode == PARALLEL_ABDADA && ply >= ABDADA_DEPTH;
+		
+		// update checkpoint
+		timeCheckpoint--;
+		
+		// test for hard stop
+		// helpers are stopped by the main engine
+		if (timeCheckpoint == 0) {
+			if ( ! helper )
+				checkTime();
+			timeCheckpoint = TIME_CHECK_INTERVAL;
+		}
+		
+		// hard stop
+		if (aborted())
+			return 0;
+		
+		// update nodes searched
+		nodesSearched++;
+		
+		// only the first child of a node on the previous principal variation follows it
+		boolean onPV = followPV;
+		followPV = false;
+		
+		// MATE DISTANCE PRUNING
+		// no line from this node can beat a mate found closer to the root
+		if ( alpha < - MATE_VALUE + rootDistance )
+			alpha = - MATE_VALUE + rootDistance;
+		if ( beta > MATE_VALUE - rootDistance - 1 )
+			beta = MATE_VALUE - rootDistance - 1;
+		if ( alpha >= beta )
+			return alpha;
+		
+		// maximum distance from the root reached
+		if ( rootDistance >= MAX_PLY - 1 )
+			return board.toMove * evaluatePosition(board);
 
-						// add killer move for current ply
-						if ( primaryKillerMoves[ply] != null ) {
-							// if new killer
-							if ( ! primaryKillerMoves[ply].equals(aux) ) {
-								// move primary killer down; add new primary killer
-								secondaryKillerMoves[ply] = primaryKillerMoves[ply];
-								primaryKillerMoves[ply] = aux;
-							}
-						}
-						// no move exists for current ply 
-						// add current move as primary killer
-						else 
-							primaryKillerMoves[ply] = aux;
+		// CHECK EXTENSION
+		// a side in check is searched one ply deeper
+		inCheck = board.inCheck();
+		if ( inCheck )
+			ply++;
+
+		// QUIESCENT SEARCH
+		if ( ply == 0 )
+			return quiescentSearch(alpha, beta, board, rootDistance, 0);
+		
+		else {
+			
+			// PRE-MOVE GENERATION PHASE
+			// TEST KILLER MOVES AND HASH MOVE
+			
+			moves = new ArrayList<Move>();
+			// moves searched without a cutoff, for the history malus
+			ArrayList<Move> searchedMoves = new ArrayList<Move>();
+			
+			// a move excluded by a singular extension search
+			// the hash table is not used for this search of the node
+			Move excludedMove = excludedMoves[rootDistance];
+			if ( excludedMove != null )
+				// the excluded move might be the only legal one
+				mateCheckFlag = false;
+			
+			// hash move
+			TranspositionEntry te = null;
+			if ( excludedMove == null )
+				te = hashTable.getEntry(board.Zobrist_Key);
+			// fail low entries might have no move
+			if ( te != null && (te.move == null || board.moveExists(te.move)) ) {
+				// the stored score is used if it is valid for the current window
+				if ( te.depth >= ply ) {
+					eval = scoreFromHash(te.eval, rootDistance);
+					if ( te.bound == HASH_EXACT )
+						return eval;
+					if ( te.bound == HASH_LOWER && eval >= beta )
+						return eval;
+					if ( te.bound == HASH_UPPER && eval <= alpha )
+						return eval;
+				}
+				if ( te.move != null ) {
+					tableMove = te.move;
+					moves.add(te.move);
+				}
+			}
+			
+			// the move of the previous principal variation is searched first
+			// it replaces the hash move if they differ
+			if ( onPV && rootDistance < previousPVLength && board.moveExists(previousPV[rootDistance]) &&
+					excludedMove == null && (tableMove == null || ! tableMove.equals(previousPV[rootDistance])) ) {
+				tableMove = previousPV[rootDistance];
+				moves.clear();
+				moves.add(tableMove);
+			}
+
+			// razoring
+			// at pre-frontier nodes, if the static evaluation is far below alpha
+			// a null window quiescent search decides if the node can be discarded
+			if ( ply < RAZOR_MARGINS.length && ! inCheck ) {
+				int razorAlpha = alpha - RAZOR_MARGINS[ply];
+				if ( board.toMove * evaluatePosition(board) <= razorAlpha ) {
+					eval = quiescentSearch(razorAlpha, razorAlpha + 1, board, rootDistance, 0);
+					// fail low confirmed
+					if ( eval <= razorAlpha )
+						return eval;
+				}
+			}
+			
+			// ProbCut
+			// if a good capture beats beta by a margin in a shallow null window search
+			// the full depth search would most likely fail high as well
+			// only at null window nodes, so no principal variation is cut
+			if ( ply >= PROBCUT_DEPTH && beta - alpha == 1 && ! inCheck && excludedMove == null && 
+					Math.abs(beta) < MATE_BOUND ) {
+				int staticEval = board.toMove * evaluatePosition(board);
+				int probBeta = beta + PROBCUT_MARGIN;
+				if ( staticEval >= beta ) {
+					ArrayList<Move> captures = board.generateCaptures();
+					sortQuisMovesHeuristic(captures, tableMove, rootDistance);
+					for (int i = 0; i < captures.size(); ++i) {
+						aux = captures.get(i);
+						// only captures that can reach the raised beta by themselves
+						if ( board.staticExchange(aux) < probBeta - staticEval || ! board.isLegal(aux) )
+							continue;
 						
-						// add history move
-						historyMoves[aux.initialLine][aux.initialCol]
-						            [aux.destinationLine][aux.destinationCol]++;
-						int freq = historyMoves[aux.initialLine][aux.initialCol]
-						                       [aux.destinationLine][aux.destinationCol];
-						// new max
-						if (freq > maxHistoryFreq)
-							maxHistoryFreq = freq;
+						board.makeMove(aux);
+						if (repetitionCheck(board.Zobrist_Key))
+							eval = CONTEMPT_FACTOR;
+						else {
+							repetitionHistory.push(board.Zobrist_Key);
+							pathMoves[rootDistance] = aux;
+							// a quiescent search filters out captures that do not hold
+							eval = - quiescentSearch(-probBeta, -probBeta + 1, board, rootDistance + 1, 0);
+							if ( eval >= probBeta )
+								eval = - alphaBeta(-probBeta, -probBeta + 1, ply - PROBCUT_REDUCTION, 
+										rootDistance + 1, board);
+							repetitionHistory.pop();
+						}
+						board.undoMove(aux);
 						
-						return beta;
-					}
-					
-					if ( eval > alpha) {
-						alpha = eval;
-						hashMove = moves.get(i);
+						if ( eval >= probBeta )
+							return beta;
 					}
 				}
+			}
+			
+			// internal iterative deepening
+			// without a hash move, a reduced depth search of the node provides one
+			if ( moves.isEmpty() && ply >= IID_DEPTH && excludedMove == null ) {
+				alphaBeta(alpha, beta, ply - IID_REDUCTION, rootDistance, board);
+				te = hashTable.getEntry(board.Zobrist_Key);
+				if ( te != null && te.move != null && board.moveExists(te.move) ) {
+					tableMove = te.move;
+					moves.add(te.move);
+				}
+			}
+			
+			// singular extension
+			// if the hash move failed high at a similar depth and all other moves fail low
+			// against a slightly lower bound in a reduced search, the hash move is extended
+			if ( tableMove != null && te != null && tableMove == te.move && 
+					ply >= SINGULAR_DEPTH && te.bound != HASH_UPPER &&
+					te.depth >= ply - SINGULAR_DEPTH_MARGIN &&
+					Math.abs(te.eval) < MATE_BOUND ) {
+				int singularBeta = te.eval - SINGULAR_MARGIN * ply;
+				excludedMoves[rootDistance] = tableMove;
+				eval = alphaBeta(singularBeta - 1, singularBeta, (ply - 1) / 2, rootDistance, board);
+				excludedMoves[rootDistance] = null;
+				if ( eval < singularBeta )
+					extension = 1;
+			}
+			
+			// the reduced searches of the node (IID, singular extension) share its line
+			// it is emptied, so only the moves searched below can set it
+			pvLength[rootDistance] = rootDistance;
+
+			// killer moves
+			if ( primaryKillerMoves[rootDistance] != 0 ) {
+				aux = Move.unpack(primaryKillerMoves[rootDistance]);
+				if ( board.moveExists(aux) )
+					moves.add(aux);
+			}
+			if ( secondaryKillerMoves[rootDistance] != 0 ) {
+				aux = Move.unpack(secondaryKillerMoves[rootDistance]);
+				if ( board.moveExists(aux) )
+					moves.add(aux);
+			}
+			numMoves = moves.size();
+			if (numMoves > 0)
+				mateCheckFlag = false;
+
+			for (int i = 0; i < numMoves; ++i) {
+				aux = moves.get(i);
 				
-				// MOVE GENERATION
+				if ( excludedMove != null && aux.equals(excludedMove) )
+					continue;
 				
-				// generate the valid moves for current position
-				// follow normal alpha beta algorithm pattern
-				moves = board.generateMoves();
-				// for mate check
-				int nLegalMoves = 0;
-
-				// apply the move sorting
-				sortMovesHeuristic(moves, ply, board.Zobrist_Key);
-				numMoves = moves.size();
-			
-				// loop through all available moves
-				for (int i = 0; i < numMoves; ++i) {
-					aux = moves.get(i);
+				board.makeMove(aux);
+				// the hash move might be extended
+				if ( aux == tableMove )
+					eval = searchMove(aux, alpha, beta, ply-1+extension, rootDistance, onPV, abdada, board);
+				else
+					eval = searchMove(aux, alpha, beta, ply-1, rootDistance, false, abdada, board);
+				board.undoMove(aux);
+				
+				// beta cutoff
+				if ( eval >= beta ) {
 					
-					// check if legal
-					if (! board.isLegal(aux))
-						continue;
+					// add HASH_LOWER transposition
+					if ( excludedMove == null && ! aborted() )
+						hashTable.addTransposition(new TranspositionEntry(
+								board.Zobrist_Key, aux, (byte)ply, scoreToHash(eval, rootDistance), HASH_LOWER));
+
+					// killer, history and counter moves
+					storeCutoffMove(aux, ply, rootDistance, searchedMoves);
 					
-					nLegalMoves++;
-					board.makeMove(aux);
+					// the parent might still use the line (the window can be narrowed by mate distance)
+					updatePV(aux, rootDistance);
 					
-					if (repetitionCheck(board.Zobrist_Key))
-						// take contempt factor into consideration
-						eval = CONTEMPT_FACTOR;	
-					else {
-						// first, add zobrist to repetition history
-						repetitionHistory.push(board.Zobrist_Key);
-						// this is where the firstMove variable is initialized
-						// with the current first level move
-						eval = - alphaBeta(-beta, -alpha, ply-1, board, aux);
-						// remove zobrist from repetition history
-						repetitionHistory.pop();
-					}
+					return eval;
+				}
+				
+				searchedMoves.add(aux);
+				
+				if ( eval > bestScore )
+					bestScore = eval;
+				if ( eval > alpha) {
+					alpha = eval;
+					hashMove = moves.get(i);
+					updatePV(hashMove, rootDistance);
+				}
+			}
+			
+			// MOVE GENERATION
+			
+			// generate the valid moves for current position
+			// follow normal alpha beta algorithm pattern
+			moves = board.generateMoves();
+			// for mate check
+			int nLegalMoves = 0;
 
-					board.undoMove(aux);
+			// apply the move sorting
+			sortMovesHeuristic(moves, tableMove, rootDistance);
+			numMoves = moves.size();
+		
+			// loop through all available moves
+			// ABDADA: moves deferred by the first pass are appended and searched at the end
+			for (int i = 0; i < moves.size(); ++i) {
+				
+				// YOUNG BROTHERS WAIT
+				// once a move has been searched without a cutoff,
+				// the remaining moves are shared with the idle helpers
+				if ( ply >= SPLIT_DEPTH && excludedMove == null && ! searchedMoves.isEmpty() &&
+						idleHelpers != null && ! idleHelpers.isEmpty() ) {
+					SplitPoint sp = new SplitPoint(board, moves, i, ply, rootDistance, 
+							alpha, beta, bestScore, hashMove, inCheck, searchedMoves);
+					splitSearch(sp, board);
+					
+					if (aborted())
+						return 0;
 					
 					// beta cutoff
-					if ( eval >= beta ) {
-
-						// add killer move for current ply
-						if ( primaryKillerMoves[ply] != null ) {
-							// if new killer
-							if ( ! primaryKillerMoves[ply].equals(aux) ) {
-								// move primary killer down; add new primary killer
-								secondaryKillerMoves[ply] = primaryKillerMoves[ply];
-								primaryKillerMoves[ply] = aux;
-							}
-						}
-						// no move exists for current ply 
-						// add current move as primary killer
-						else 
-							primaryKillerMoves[ply] = aux;
+					if ( sp.cutoff ) {
+						aux = sp.cutoffMove;
+						eval = sp.bestScore;
+						
+						// add HASH_LOWER transposition
+						hashTable.addTransposition(new TranspositionEntry(
+								board.Zobrist_Key, aux, (byte)ply, scoreToHash(eval, rootDistance), HASH_LOWER));
 						
-						// add history move
-						historyMoves[aux.initialLine][aux.initialCol]
-						            [aux.destinationLine][aux.destinationCol]++;
-						int freq = historyMoves[aux.initialLine][aux.initialCol]
-						                       [aux.destinationLine][aux.destinationCol];
-						// new max
-						if (freq > maxHistoryFreq)
-							maxHistoryFreq = freq;
+						// killer, history and counter moves
+						// (the line of the cutoff move is already in the principal variation)
+						storeCutoffMove(aux, ply, rootDistance, searchedMoves);
 						
-						return beta;
+						return eval;
 					}
 					
-					if ( eval > alpha) {
-						alpha = eval;
-						hashMove = moves.get(i);
-					}
+					alpha = sp.alpha;
+					bestScore = sp.bestScore;
+					hashMove = sp.bestMove;
+					break;
+				}
+				
+				aux = moves.get(i);
+				
+				if ( excludedMove != null && aux.equals(excludedMove) )
+					continue;
+				
+				// check if legal
+				if (! board.isLegal(aux))
+					continue;
+				
+				nLegalMoves++;
+				
+				// SEE pruning
+				// the first move of the node is always searched
+				if ( (nLegalMoves > 1 || ! mateCheckFlag) && seePruned(aux, ply, rootDistance, inCheck, board) )
+					continue;
+				
+				board.makeMove(aux);
+				
+				// ABDADA: once a move has been searched, a position being searched
+				// by another thread is deferred to the end of the loop
+				if ( abdada && i < numMoves && ! searchedMoves.isEmpty() && hashTable.isBusy(board.Zobrist_Key) ) {
+					board.undoMove(aux);
+					moves.add(aux);
+					nLegalMoves--;
+					continue;
+				}
+				
+				eval = searchMove(aux, alpha, beta, ply-1, rootDistance, false, abdada, board);
+				board.undoMove(aux);
+				
+				// beta cutoff
+				if ( eval >= beta ) {
+					
+					// add HASH_LOWER transposition
+					if ( excludedMove == null && ! aborted() )
+						hashTable.addTransposition(new TranspositionEntry(
+								board.Zobrist_Key, aux, (byte)ply, scoreToHash(eval, rootDistance), HASH_LOWER));
+
+					// killer, history and counter moves
+					storeCutoffMove(aux, ply, rootDistance, searchedMoves);
+					
+					// the parent might still use the line (the window can be narrowed by mate distance)
+					updatePV(aux, rootDistance);
+					
+					return eval;
+				}
+				
+				searchedMoves.add(aux);
+				
+				if ( eval > bestScore )
+					bestScore = eval;
+				if ( eval > alpha) {
+					alpha = eval;
+					hashMove = moves.get(i);
+					updatePV(hashMove, rootDistance);
+				}
+			}
+			
+			// if there are no legal moves => return mate / stalemate value
+			if ( nLegalMoves == 0 && mateCheckFlag )
+				return - board.toMove * mateCheck(board, rootDistance);
+			
+			// every move was pruned or excluded
+			if ( bestScore == - INF )
+				bestScore = alpha;
+		}
+		
+		// nothing is stored for a search excluding a move or for an interrupted search
+		if ( excludedMoves[rootDistance] == null && ! aborted() ) {
+			// add HASH_EXACT transposition
+			if ( hashMove != null )
+				hashTable.addTransposition(new TranspositionEntry(
+						board.Zobrist_Key, hashMove, (byte)ply, scoreToHash(bestScore, rootDistance), HASH_EXACT));
+			// add HASH_UPPER transposition: no move raised alpha
+			// the hash move found so far (if any) is kept for ordering
+			else
+				hashTable.addTransposition(new TranspositionEntry(
+						board.Zobrist_Key, tableMove, (byte)ply, scoreToHash(bestScore, rootDistance), HASH_UPPER));
+		}
+			
+		return bestScore;
+	}
+	
+	
+	
+	/**
+	 *  Searches the position after a move of a node, the move being made on the board
+	 *  Used by the move loops of alphaBeta and searchSplitPoint
+	 *
+	 *  @param Move the move
+	 *  @param int alpha of the node
+	 *  @param int beta of the node
+	 *  @param int depth of the child (extensions included)
+	 *  @param int distance from the root of the node
+	 *  @param boolean true if the child follows the previous principal variation
+	 *  @param boolean true to mark the child as busy while it is searched (ABDADA)
+	 *  @param Board the board, after the move
+	 * 
+	 *  @return evaluation of the move
+	 *
+	 */
+	private int searchMove(Move m, int alpha, int beta, int childPly, int rootDistance, 
+			boolean pv, boolean abdada, Board board) {
+		int eval;
+		
+		// the child line is empty unless the move is searched
+		pvLength[rootDistance + 1] = rootDistance + 1;
+		
+		if (repetitionCheck(board.Zobrist_Key))
+			// take contempt factor into consideration
+			eval = CONTEMPT_FACTOR;	
+		else {
+			// first, add zobrist to repetition history
+			repetitionHistory.push(board.Zobrist_Key);
+			pathMoves[rootDistance] = m;
+			followPV = pv;
+			if ( abdada )
+				hashTable.enter(board.Zobrist_Key);
+			eval = - alphaBeta(-beta, -alpha, childPly, rootDistance+1, board);
+			if ( abdada )
+				hashTable.leave(board.Zobrist_Key);
+			// remove zobrist from repetition history
+			repetitionHistory.pop();
+		}
+		
+		return eval;
+	}
+	
+	
+	
+	/**
+	 *  SEE pruning: close to the horizon, captures and quiet moves that lose material are skipped
+	 *  Nothing is pruned in check, nor quiet moves that usually work in this continuation
+	 *
+	 *  @param Move the move, not made yet
+	 *  @param int current ply
+	 *  @param int distance from the root
+	 *  @param boolean true if the side to move is in check
+	 *  @param Board the board
+	 * 
+	 *  @return true if the move is not searched
+	 *
+	 */
+	private boolean seePruned(Move m, int ply, int rootDistance, boolean inCheck, Board board) {
+		int seeMargin;
+		
+		if ( ply > SEE_PRUNING_DEPTH || inCheck || (isQuiet(m) && continuationScore(m, rootDistance) > 0) )
+			return false;
+		
+		if ( m.pieceCaptured == EMPTY_SQUARE )
+			seeMargin = SEE_QUIET_MARGIN;
+		else
+			seeMargin = SEE_CAPTURE_MARGIN;
+		return board.staticExchange(m) < - seeMargin * ply;
+	}
+	
+	
+	
+	/**
+	 *  Searches a split point with the idle helpers (YBWC)
+	 *  The owner searches moves as well, then waits for the helpers to finish
+	 *
+	 *  @param SplitPoint the split point
+	 *  @param Board the board of the owner
+	 *
+	 */
+	private void splitSearch(final SplitPoint sp, Board board) {
+		Engine worker;
+		
+		// hand the split point to the idle helpers
+		while ( (worker = idleHelpers.poll()) != null ) {
+			final Engine engine = worker;
+			synchronized (sp) {
+				sp.workers++;
+			}
+			splitPool.execute(new Runnable() {
+				@Override
+				public void run() {
+					engine.joinSplitPoint(sp);
+				}
+			});
+		}
+		
+		searchSplitPoint(sp, board);
+		
+		// the main engine keeps checking the time while waiting
+		synchronized (sp) {
+			while ( sp.workers > 0 ) {
+				try {
+					sp.wait(SPLIT_WAIT);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				if ( ! helper )
+					checkTime();
+			}
+		}
+	}
+	
+	
+	/**
+	 *  Searches a split point on a helper thread, on a copy of the owner's position
+	 *  The helper is idle again when there are no moves left
+	 *
+	 *  @param SplitPoint the split point
+	 *
+	 */
+	private void joinSplitPoint(SplitPoint sp) {
+		try {
+			repetitionHistory = new Stack<Long>();
+			repetitionHistory.addAll(sp.repetitionHistory);
+			System.arraycopy(sp.pathMoves, 0, pathMoves, 0, sp.rootDistance);
+			followPV = false;
+			
+			searchSplitPoint(sp, new Board(sp.board));
+		}
+		finally {
+			idleHelpers.add(this);
+			synchronized (sp) {
+				sp.workers--;
+				sp.notifyAll();
+			}
+		}
+	}
+	
+	
+	/**
+	 *  Searches the moves of a split point until there are none left
+	 *  Same as the move loop of alphaBeta (with the same search of every move); the window,
+	 *  the best score and the moves are shared with the other engines searching the split point
+	 *  Split points are never made with an excluded move, and not in ABDADA mode (no deferred moves)
+	 *
+	 *  @param SplitPoint the split point
+	 *  @param Board the board, in the position of the split point
+	 *
+	 */
+	private void searchSplitPoint(SplitPoint sp, Board board) {
+		Move aux;
+		int eval, alpha;
+		int ply = sp.ply;
+		int rootDistance = sp.rootDistance;
+		boolean abdada = parallelMode == PARALLEL_ABDADA && ply >= ABDADA_DEPTH;
+		SplitPoint previous = splitPoint;
+		
+		splitPoint = sp;
+		
+		while (true) {
+			// get the next move and the current window
+			synchronized (sp) {
+				if ( sp.next >= sp.moves.size() || sp.stopped() )
+					break;
+				aux = sp.moves.get(sp.next++);
+				alpha = sp.alpha;
+			}
+			
+			// check if legal
+			if (! board.isLegal(aux))
+				continue;
+			
+			// SEE pruning
+			// the first move of the node has already been searched
+			if ( seePruned(aux, ply, rootDistance, sp.inCheck, board) )
+				continue;
+			
+			board.makeMove(aux);
+			eval = searchMove(aux, alpha, sp.beta, ply-1, rootDistance, false, abdada, board);
+			board.undoMove(aux);
+			
+			// the result of an interrupted search is not used
+			if (aborted())
+				break;
+			
+			synchronized (sp) {
+				// beta cutoff: the other engines stop searching the split point
+				if ( eval >= sp.beta ) {
+					sp.cutoff = true;
+					sp.cutoffMove = aux;
+					sp.bestScore = eval;
+					sp.updatePV(aux, this);
+					break;
 				}
 				
-				// if there are no legal moves => return mate / stalemate value
-				if ( nLegalMoves == 0 && mateCheckFlag )
-					return - board.toMove * mateCheck(board, ply);
+				sp.searchedMoves.add(aux);
+				
+				if ( eval > sp.bestScore )
+					sp.bestScore = eval;
+				if ( eval > sp.alpha ) {
+					sp.alpha = eval;
+					sp.bestMove = aux;
+					sp.updatePV(aux, this);
+				}
 			}
 		}
 		
-		// add HASH_EXACT transposition
-		if (hashMove != null)
-			hashTable.addTransposition(new TranspositionEntry(
-					board.Zobrist_Key, hashMove, (byte)ply, alpha));
-			
-		return alpha;
+		splitPoint = previous;
 	}
 	
 	
 	
 	/**
 	 *  Quiescent search (only considers captures)
+	 *  Quiet checks are added in the first quiescent ply and
+	 *  all evasions are searched when the side to move is in check
 	 *  Has no fixed maximum depth
 	 *
 	 *	@param int alpha value
 	 *  @param int beta value  
 	 *  @param Board the board
-	 *  @param ArrayList<Move> initial Moves
+	 *  @param int distance from the root
+	 *  @param int quiescent ply (0 at the horizon)
 	 *  
 	 *  @return evaluation
 	 *  
 	 */
-	int quiescentSearch(int alpha, int beta, Board board) {
+	int quiescentSearch(int alpha, int beta, Board board, int rootDistance, int qPly) {
 
 		ArrayList<Move> quisMoves;
-		int numMoves, eval;
+		int numMoves, eval, standPat = 0;
+		// best score found (fail soft)
+		int bestScore = - INF;
 		Move aux;
+		boolean endgame, inCheck;
+		int nLegalMoves = 0;
+		// best move found and hash move
+		Move bestMove = null;
+		Move tableMove = null;
 
 		// update nodes searched
-        nodesSearched++;
-        
-		// evaluate current position first and check for cut offs
-		eval = board.toMove * evaluatePosition(board);
-		if(eval >= beta)
-			return beta;
-		if(eval > alpha) {
-			alpha = eval;
+		nodesSearched++;
+		
+		// maximum distance from the root reached
+		if ( rootDistance >= MAX_PLY - 1 )
+			return board.toMove * evaluatePosition(board);
+		
+		// hash table probe
+		// any entry is deep enough for the quiescent search
+		TranspositionEntry te = hashTable.getEntry(board.Zobrist_Key);
+		if ( te != null && (te.move == null || board.moveExists(te.move)) ) {
+			eval = scoreFromHash(te.eval, rootDistance);
+			if ( te.bound == HASH_EXACT )
+				return eval;
+			if ( te.bound == HASH_LOWER && eval >= beta )
+				return eval;
+			if ( te.bound == HASH_UPPER && eval <= alpha )
+				return eval;
+			tableMove = te.move;
 		}
-
-		// optimize array initial capacity
-		quisMoves = new ArrayList<Move>(50);
+		int oldAlpha = alpha;
+		
+		// evasions are only searched up to MAX_QUIESCENT_CHECKS plies
+		// this avoids endless sequences of checks and cross checks
+		inCheck = qPly < MAX_QUIESCENT_CHECKS && board.inCheck();
 		
-		// generate all captures
-		quisMoves = board.generateCaptures();
+		// delta pruning is not safe when material is scarce
+		endgame = board.isEndgame();
+		
+		if ( ! inCheck ) {
+			// evaluate current position first and check for cut offs
+			standPat = board.toMove * evaluatePosition(board);
+			if(standPat >= beta)
+				return standPat;
+			bestScore = standPat;
+			if(standPat > alpha) {
+				alpha = standPat;
+			}
+			
+			// bad capture cutoff: not even winning a queen can raise the score to alpha
+			if ( ! endgame && standPat + QUEEN_VALUE + DELTA_MARGIN <= alpha && ! board.canPromote() )
+				return standPat + QUEEN_VALUE + DELTA_MARGIN;
+			
+			// generate all captures
+			quisMoves = board.generateCaptures();
+			// quiet checks are only tried at the horizon
+			if ( qPly == 0 )
+				quisMoves.addAll(board.generateQuietChecks());
+		}
+		else
+			// no stand pat when in check; every evasion is tried
+			quisMoves = board.generateMoves();
 		
 		// sort new list of moves
 		// sorting heuristic works fine despite moves being only captures
-		// no ply is available so a dummy value is set
-		sortQuisMovesHeuristic(quisMoves, 0, board.Zobrist_Key);
+		sortQuisMovesHeuristic(quisMoves, tableMove, rootDistance);
 		numMoves = quisMoves.size();
 		
 		// loop through moves
 		for (int i = 0; i < numMoves; ++i) {
 			aux = quisMoves.get(i);
 			
+			if ( ! inCheck && aux.moveType != PROMOTION_QUEEN ) {
+				// delta pruning: the captured piece cannot raise the score to alpha
+				if ( ! endgame && aux.pieceCaptured != EMPTY_SQUARE &&
+						standPat + pieceValue[Math.abs(aux.pieceCaptured)] + DELTA_MARGIN <= alpha )
+					continue;
+				// SEE pruning: the capture (or the quiet check) loses material
+				// only needed when the attacker is worth more than the victim
+				if ( pieceValue[Math.abs(aux.pieceMoving)] > pieceValue[Math.abs(aux.pieceCaptured)] &&
+						board.staticExchange(aux) < 0 )
+					continue;
+			}
+			
 			// check if legal
 			if (! board.isLegal(aux))
 				continue;
-		
+			
+			nLegalMoves++;
+			pathMoves[rootDistance] = aux;
 			board.makeMove(aux);
-			eval = - quiescentSearch(-beta, -alpha, board);
+			eval = - quiescentSearch(-beta, -alpha, board, rootDistance + 1, qPly + 1);
 			board.undoMove(aux);
 			
 			// beta cutoff
 			if ( eval >= beta ) {
-				return beta;
+				// add HASH_LOWER transposition
+				hashTable.addTransposition(new TranspositionEntry(
+						board.Zobrist_Key, aux, (byte)0, scoreToHash(eval, rootDistance), HASH_LOWER));
+				return eval;
 			}
+			if ( eval > bestScore )
+				bestScore = eval;
 			if ( eval > alpha) {
 				alpha = eval;
-				// NOTHING EXTRA HERE?
+				bestMove = aux;
 			}
 		}
 		
-		return alpha;
+		// no evasion available => mated
+		if ( inCheck && nLegalMoves == 0 )
+			return - board.toMove * mateCheck(board, rootDistance);
+		
+		// add HASH_EXACT transposition if alpha was raised (by the stand pat or a move)
+		// HASH_UPPER otherwise
+		if ( bestMove == null )
+			bestMove = tableMove;
+		hashTable.addTransposition(new TranspositionEntry(board.Zobrist_Key, bestMove, (byte)0,
+				scoreToHash(bestScore, rootDistance), bestScore > oldAlpha ? HASH_EXACT : HASH_UPPER));
+		
+		return bestScore;
 	}
 	
 	
 	
 	/**
-	 *  Iterative Deepening heuristic
-	 *  Calls the alphaBeta repeatedly and sets the bestMoves global variable
-	 *	Implements time management
+	 *  Searches the position on the main thread and on the helper threads
+	 *  Lazy SMP: helpers search their own copy of the board, starting at staggered depths,
+	 *  and share the hash table; they stop when the main search is over
+	 *  YBWC: helpers only search the split points of the main search
+	 *  Root moves: helpers only search root moves of the main search
+	 *  ABDADA: as Lazy SMP, but all threads start at the same depth and
+	 *  defer the moves searched by other threads
+	 *  A search taken over from a ponder helper goes on after the depth it completed
 	 *
 	 *  @param Board The board containing position to be evaluated
 	 *  @return the best move
 	 *
 	 */
 	Move iterativeDeepening(Board board) {
-		int i, eval, oldEval;
-		Move aux;
-		int alpha, beta;
-		EvaluatedMove bestMove = null;
+		Thread[] threads = new Thread[helpers.length];
+		Move move;
 		
 		// initialize thinking time
 		startTime = System.currentTimeMillis();
 		
 		// initialize stopThinking to false
 		stopThinking = false;
+		nodesSearched = 0;
+		
+		final boolean resume = resumeDepth > 0;
+		final int mainDepth = Math.max(2, resumeDepth + 1);
+		resumeDepth = 0;
+		
+		if ( (parallelMode == PARALLEL_YBWC || parallelMode == PARALLEL_ROOT_MOVES) && helpers.length > 0 )
+			return pooledSearch(board, mainDepth, resume);
+		
+		// start the helpers
+		for (int i = 0; i < helpers.length; i++) {
+			final Engine engine = helpers[i];
+			final Board copy = new Board(board);
+			// every other helper starts one ply deeper (Lazy SMP)
+			final int firstDepth = parallelMode == PARALLEL_ABDADA ? mainDepth : mainDepth + (i + 1) % 2;
+			
+			engine.repetitionHistory = new Stack<Long>();
+			engine.repetitionHistory.addAll(repetitionHistory);
+			engine.parallelMode = parallelMode;
+			engine.multiPV = multiPV;
+			engine.movesPlayed = movesPlayed;
+			engine.timeForMove = timeForMove;
+			engine.startTime = startTime;
+			engine.stopThinking = false;
+			engine.nodesSearched = 0;
+			
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					engine.iterativeSearch(copy, firstDepth, false);
+				}
+			});
+			threads[i].start();
+		}
+		
+		move = iterativeSearch(board, mainDepth, resume);
+		
+		// stop the helpers
+		for (int i = 0; i < helpers.length; i++)
+			helpers[i].stopThinking = true;
+		for (int i = 0; i < helpers.length; i++) {
+			try {
+				threads[i].join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		return move;
+	}
+	
+	
+	
+	/**
+	 *  Searches the position with the helpers running on a thread pool
+	 *  YBWC: helpers wait for split points and get their own copy of the position for each one
+	 *  Root moves: helpers share the root moves of every iteration after the first one
+	 *
+	 *  @param Board The board containing position to be evaluated
+	 *  @param int depth of the first iteration
+	 *  @param boolean true to follow the principal variation in previousPV
+	 *  @return the best move
+	 *
+	 */
+	private Move pooledSearch(Board board, int firstDepth, boolean resume) {
+		Move move;
+		
+		splitPool = Executors.newFixedThreadPool(helpers.length);
+		if ( parallelMode == PARALLEL_YBWC )
+			idleHelpers = new ConcurrentLinkedQueue<Engine>();
+		
+		for (int i = 0; i < helpers.length; i++) {
+			Engine engine = helpers[i];
+			
+			if ( parallelMode == PARALLEL_YBWC ) {
+				engine.idleHelpers = idleHelpers;
+				engine.splitPool = splitPool;
+				idleHelpers.add(engine);
+			}
+			engine.repetitionHistory = new Stack<Long>();
+			engine.repetitionHistory.addAll(repetitionHistory);
+			engine.parallelMode = parallelMode;
+			engine.multiPV = multiPV;
+			engine.movesPlayed = movesPlayed;
+			engine.stopThinking = false;
+			engine.nodesSearched = 0;
+			Arrays.fill(engine.primaryKillerMoves, 0);
+			Arrays.fill(engine.secondaryKillerMoves, 0);
+			engine.ageHistory();
+		}
+		
+		move = iterativeSearch(board, firstDepth, resume);
+		
+		// every split point (or root move) is over when the main search returns
+		splitPool.shutdown();
+		splitPool = null;
+		idleHelpers = null;
+		for (int i = 0; i < helpers.length; i++) {
+			helpers[i].splitPool = null;
+			helpers[i].idleHelpers = null;
+		}
+		
+		return move;
+	}
+	
+	
+	
+	/**
+	 *  Iterative Deepening heuristic
+	 *  Calls the alphaBeta repeatedly and sets the bestMoves global variable
+	 *	Implements time management (main engine only)
+	 *
+	 *  @param Board The board containing position to be evaluated
+	 *  @param int depth of the first iteration
+	 *  @param boolean true to follow the principal variation in previousPV (search taken over)
+	 *  @return the best move
+	 *
+	 */
+	private Move iterativeSearch(Board board, int firstDepth, boolean resume) {
+		int i, eval, oldEval;
+		Move aux;
+		int alpha, beta, delta;
+		EvaluatedMove bestMove = null;
+		// iterations since the best move last changed
+		int stableIterations = 0;
+		long softLimit;
 		
-		// initialize killer moves
-		primaryKillerMoves = new Move[MAX_KILLERS];
-		secondaryKillerMoves = new Move[MAX_KILLERS];
+		// clear killer moves
+		Arrays.fill(primaryKillerMoves, 0);
+		Arrays.fill(secondaryKillerMoves, 0);
 		
-		// initialize history moves
-		historyMoves = new int[12][12][12][12];		// 8 x 8 + borders
-        maxHistoryFreq = 0;
+		// age history moves
+		ageHistory();
 
 		// reset global variable
 		bestMoves = new ArrayList<EvaluatedMove>();
@@ -1103,87 +2514,139 @@ public class Engine implements Definitions, Evaluation {
 		
 		// sort best moves by initial evaluation score
 		Collections.sort(bestMoves);
+		// a search taken over starts with the best move it was given
+		if ( resume )
+			for (i = 0; i < numMoves; ++i)
+				if ( bestMoves.get(i).m.equals(previousPV[0]) ) {
+					bestMoves.add(0, bestMoves.remove(i));
+					break;
+				}
 		bestMove = bestMoves.get(0);
 		oldEval = bestMove.evaluation;
+		completedDepth = 0;
+		
+		// the initial principal variation is the best move by static evaluation
+		// (a search taken over keeps the one it was given)
+		if ( ! resume || ! bestMove.m.equals(previousPV[0]) ) {
+			previousPV[0] = bestMove.m;
+			previousPVLength = 1;
+		}
 		
 		alpha = - INF;
 		beta = + INF;
 		
 		// iterative deepening loop
-		for (i = 2; ; i++) {
-			
-			nodesSearched = 0;
-			
-			// initialize evaluations with -INF
-			// only move order is important; score doesn't matter
-			Iterator<EvaluatedMove> it = bestMoves.iterator();
-			while ( it.hasNext() ) {
-				it.next().evaluation = -INF;
-			}
+		for (i = firstDepth; i < MAX_PLY; i++) {
 			
 			// initialize hard stop counter before alphaBeta
 			timeCheckpoint = TIME_CHECK_INTERVAL;
 			
-			// call alphabeta and get best move for current iteration
-			eval = alphaBeta( alpha, beta, i, board, null );
-			
-			// if hard stop return bestMove from previous level
-			if (stopThinking) {
-				System.out.println(i - 1 + " " + oldEval + " "
-                                    + (System.currentTimeMillis() - startTime) / 10 + " "
-                                    + nodesSearched + "    " + bestMove.m.toString());
-				return bestMove.m;
-			}
-			
-			// if alphabeta result is outside aspiration window
-			// call alphabeta again with - INF and INF
-			if ( eval <= alpha || eval >= beta ) {
-				/*
-				System.out.println(i + " " + eval + " "
-                        + (System.currentTimeMillis() - startTime) / 10 + " "
-                        + nodesSearched + "    " + bestMove.m.toString() 
-                        + "   qply=" + qPly + "    AW");
-                */
-				nodesSearched = 0;
-				eval = alphaBeta( - INF, INF, i, board, null);
+			// aspiration search
+			// if the result is outside the window, only the failing side is widened
+			// the window grows geometrically and the hash table keeps the work done
+			delta = ASPIRATION_WINDOW;
+			while (true) {
+				// initialize evaluations with -INF
+				// only move order is important; score doesn't matter
+				Iterator<EvaluatedMove> it = bestMoves.iterator();
+				while ( it.hasNext() ) {
+					it.next().evaluation = -INF;
+				}
+				
+				// call alphabeta and get best move for current iteration
+				eval = rootSearch( alpha, beta, i, board );
+				
+				if ( stopThinking )
+					break;
+				
+				if ( eval <= alpha )
+					alpha = Math.max(eval - delta, - INF);
+				else if ( eval >= beta ) {
+					beta = Math.min(eval + delta, INF);
+					// the move failing high is searched first
+					Collections.sort(bestMoves);
+				}
+				else
+					break;
+				delta *= 2;
 			}
 			
 			// set aspiration window around the value of previous evaluation
+			// there is no window around mate scores, nor in multi-PV mode
+			// (the other moves would only get bounds)
 			alpha = eval - ASPIRATION_WINDOW;
 			beta = eval + ASPIRATION_WINDOW;
+			if ( Math.abs(eval) >= MATE_BOUND || multiPV > 1 ) {
+				alpha = - INF;
+				beta = INF;
+			}
 			
 			// if hard stop return bestMove from previous level
 			if (stopThinking) {
-				System.out.println(i - 1 + " " + oldEval + " "
-                                    + (System.currentTimeMillis() - startTime) / 10 + " "
-                                    + nodesSearched + "    " + bestMove.m.toString());
+				if ( ! helper && ! pondering )
+					System.out.println(i - 1 + " " + oldEval + " "
+	                                    + (System.currentTimeMillis() - startTime) / 10 + " "
+	                                    + totalNodes() + "    " + principalVariation());
 				return bestMove.m;
 			}
 			
 			// no hard stop, so alphabeta completed successfully
 			// sort moves by score from current level
 			Collections.sort(bestMoves);
+			// the other moves only have bounds for scores (multi-PV: the moves after the first multiPV)
+			// they are ordered by the effort spent on them
+			Collections.sort(bestMoves.subList(Math.min(multiPV, bestMoves.size()), bestMoves.size()), 
+					new Comparator<EvaluatedMove>() {
+				@Override
+				public int compare(EvaluatedMove arg0, EvaluatedMove arg1) {
+					return arg1.nodes - arg0.nodes;
+				}
+			});
+			
+			// best move stability
+			if ( bestMoves.get(0).m.equals(bestMove.m) )
+				stableIterations++;
+			else
+				stableIterations = 0;
 			// the highest evaluated best move is the best move
 			bestMove = bestMoves.get(0);
 			
-			// soft stop if there is not enough estimated time for another iteration
-			if (System.currentTimeMillis() - startTime >= timeForMove / 3) {
-				System.out.println(i + " " + bestMove.evaluation + " "
-                                    + (System.currentTimeMillis() - startTime) / 10 + " "
-                                    + nodesSearched + "    " + bestMove.m.toString());
-				return bestMove.m;
-			}
+			// keep the principal variation for the output and for the next iteration
+			previousPVLength = pvLength[0];
+			System.arraycopy(pvTable[0], 0, previousPV, 0, previousPVLength);
+			completedDepth = i;
 			
 			oldEval = bestMove.evaluation;
+			
+			// helpers search until the main engine stops them
+			if ( helper )
+				continue;
+			
+			// soft stop if there is not enough estimated time for another iteration
+			// a stable best move needs less time, a best move that just changed needs more
+			// (only if a hard stop is possible)
+			// (a ponder search goes on until the opponent moves)
+			if ( ! pondering ) {
+				softLimit = timeForMove / 3;
+				if ( stableIterations >= STABLE_ITERATIONS )
+					softLimit = timeForMove / 4;
+				else if ( stableIterations == 0 && movesPlayed > MIDGAME_MOVES )
+					softLimit = timeForMove / 2;
+				if (System.currentTimeMillis() - startTime >= softLimit) {
+					printThinking(i);
+					return bestMove.m;
+				}
+			}
 
-			System.out.println(i + " " + bestMove.evaluation + " "
-	                + (System.currentTimeMillis() - startTime) / 10 + " "
-	                + nodesSearched + "    " + bestMove.m.toString());
+			printThinking(i);
 
 			// return if mate found
-			if (bestMove.evaluation >= MATE_VALUE || bestMove.evaluation <= - MATE_VALUE)
+			if (bestMove.evaluation >= MATE_BOUND || bestMove.evaluation <= - MATE_BOUND)
 				return bestMove.m;
 		}
+		
+		// maximum depth reached
+		return bestMove.m;
 	}
 	
 	
@@ -1201,23 +2664,17 @@ public class Engine implements Definitions, Evaluation {
 	public String generateMove(Board board, long timeAvailable) {
 		String moveSAN = "";
 		Move move;
-		byte i, j;
 		
 		// clear hash every HASH_CHECKPOINT moves
-		if (movesPlayed % HASH_CHECKPOINT == 0)
+		// (unless it was cleared before pondering, then it keeps the ponder search)
+		if (movesPlayed % HASH_CHECKPOINT == 0 && ! warmHash)
             hashTable.clear();
+		// a new search, unless it goes on from the ponder search
+		if ( ! warmHash )
+			hashTable.newSearch();
+		warmHash = false;
 		
-		// set time for move
-		// 40 moves per increment
-		timeForMove = (timeAvailable - TIME_SAFETY) / 
-						(TIME_CONTROL_MOVES - movesPlayed % TIME_CONTROL_MOVES);
-
-		// award an extra 1/2 time for first 1 - 20 moves
-		if (movesPlayed <= MIDGAME_MOVES)
-			timeForMove += timeForMove * EXTRA_TIME;
-		
-		// increment moves played
-		movesPlayed++;
+		setTimeForMove(timeAvailable);
 		
 		// if opening book is turned on
 		if (useOpeningBook) {
@@ -1248,46 +2705,330 @@ public class Engine implements Definitions, Evaluation {
 			// call the iterative deepening algorithm
 			move = iterativeDeepening(board);
  
-			// if the algorithm hasn't returned a move?
-			if (move != null) {
-				moveSAN = move.writeMove(board);
-				// and also make it on the board
-				board.makeMove(move);
-				
-				// add move to history
-                if (movesPlayed >= REPETITION_MOVES)
-                    repetitionHistory.push(board.Zobrist_Key);
+			return playMove(move, board);
+		}
+	}
+	
+	
+	
+	/**
+	 *  Sets the time for the next move and counts it as played
+	 *  
+	 *  @param long total time remaining in miliseconds
+	 *  
+	 */
+	private void setTimeForMove(long timeAvailable) {
+		// set time for move
+		// 40 moves per increment
+		timeForMove = (timeAvailable - TIME_SAFETY) / 
+						(TIME_CONTROL_MOVES - movesPlayed % TIME_CONTROL_MOVES);
+
+		// award an extra 1/2 time for first 1 - 20 moves
+		if (movesPlayed <= MIDGAME_MOVES)
+			timeForMove += timeForMove * EXTRA_TIME;
+		
+		// increment moves played
+		movesPlayed++;
+	}
+	
+	
+	
+	/**
+	 *  Makes a move found by the search on the board
+	 *  
+	 *  @param Move the move (null if there is none)
+	 *  @param Board the chessboard
+	 *  @return The move in SAN, with '+' or '#' appended, or an empty string
+	 *  
+	 */
+	private String playMove(Move move, Board board) {
+		String moveSAN = "";
+		byte i, j;
+		
+		// if the algorithm hasn't returned a move?
+		if (move != null) {
+			moveSAN = move.writeMove(board);
+			// and also make it on the board
+			board.makeMove(move);
 			
-				// append '#' if mate or '+' if check to the SAN string
-				// check to see if opponent is in check or mate
-				// generate opponent moves (toMove has been changed) by makeMove
-		
-				ArrayList<Move> moves = board.generateMoves();
-				board.filterLegal(moves);
-				if ( board.toMove == BLACK ) {
-					i = board.blackKingLine;
-					j = board.blackKingCol;
-				}
-				else {
-					i = board.whiteKingLine;
-					j = board.whiteKingCol;
-				}
+			// add move to history
+            if (movesPlayed >= REPETITION_MOVES)
+                repetitionHistory.push(board.Zobrist_Key);
+		
+			// append '#' if mate or '+' if check to the SAN string
+			// check to see if opponent is in check or mate
+			// generate opponent moves (toMove has been changed) by makeMove
+	
+			ArrayList<Move> moves = board.generateMoves();
+			board.filterLegal(moves);
+			if ( board.toMove == BLACK ) {
+				i = board.blackKingLine;
+				j = board.blackKingCol;
+			}
+			else {
+				i = board.whiteKingLine;
+				j = board.whiteKingCol;
+			}
+			
+			if ( moves.size() == 0 ) {
+				// if opponent has no legal moves and his king is attacked
+				// he is clearly mated
+				if ( board.isAttacked(i, j, (byte) (board.toMove * -1)) )
+					moveSAN += "#";
+			}
+			else
+				if ( board.isAttacked(i, j, (byte) (board.toMove * -1)) )
+					moveSAN += "+";
+		}
+		// if the engine has no valid move, an empty string will be returned
+		return moveSAN;
+	}
+	
+	
+	
+	/**
+	 *  Starts pondering: the position after the expected reply (the second move of the
+	 *  principal variation) is searched on another thread, without a time limit
+	 *  With ponder helpers, the next best replies of a shallow search are searched as well,
+	 *  ranked and started by another thread so that the input is not held up
+	 *  Nothing happens while the opening book is used or if there is no expected reply
+	 *  
+	 *  @param Board the chessboard, after the move of the engine
+	 *  
+	 */
+	public void startPondering(Board board) {
+		if ( useOpeningBook || previousPVLength < 2 || ponderSearches != null )
+			return;
+		
+		Move expected = previousPV[1];
+		if ( ! board.moveExists(expected) || ! board.isLegal(expected) )
+			return;
+		
+		// the hash table is cleared now if it is due for the next move
+		if (movesPlayed % HASH_CHECKPOINT == 0)
+            hashTable.clear();
+		hashTable.newSearch();
+		warmHash = true;
+		
+		ponderSearches = new ArrayList<PonderSearch>();
+		ponderSearches.add(new PonderSearch(this, expected, board));
+		pondering = true;
+		ponderSearches.get(0).start();
+		
+		// speculative pondering: the other replies go to the ponder helpers
+		if ( ponderers.length > 0 ) {
+			final Board copy = new Board(board);
+			final Move skipped = expected;
+			
+			for (int i = 0; i < ponderers.length; i++) {
+				Engine engine = ponderers[i];
 				
-				if ( moves.size() == 0 ) {
-					// if opponent has no legal moves and his king is attacked
-					// he is clearly mated
-					if ( board.isAttacked(i, j, (byte) (board.toMove * -1)) )
-						moveSAN += "#";
+				engine.repetitionHistory = new Stack<Long>();
+				engine.repetitionHistory.addAll(repetitionHistory);
+				engine.parallelMode = parallelMode;
+				engine.multiPV = multiPV;
+				engine.movesPlayed = movesPlayed;
+				engine.pondering = true;
+			}
+			
+			ponderLauncher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					startPonderHelpers(copy, skipped);
 				}
-				else
-					if ( board.isAttacked(i, j, (byte) (board.toMove * -1)) )
-						moveSAN += "+";
+			});
+			ponderLauncher.start();
+		}
+	}
+	
+	
+	
+	/**
+	 *  Ranks the replies other than the expected one and starts their ponder searches
+	 *  Runs on the launcher thread; nothing is started if it was cancelled while ranking
+	 *  
+	 *  @param Board the chessboard, after the move of the engine
+	 *  @param Move the expected reply (left out)
+	 *  
+	 */
+	private void startPonderHelpers(Board board, Move expected) {
+		ArrayList<Move> replies = ponderReplies(board, expected);
+		if ( ponderers[0].stopThinking )
+			return;
+		
+		for (int i = 0; i < ponderers.length && i < replies.size(); i++) {
+			PonderSearch ps = new PonderSearch(ponderers[i], replies.get(i), board);
+			ponderSearches.add(ps);
+			ps.start();
+		}
+	}
+	
+	
+	
+	/**
+	 *  Waits for the launcher of the speculative ponder searches, cancelling the ranking
+	 *  of the replies if it is not over; the list of ponder searches is complete afterwards
+	 *  
+	 */
+	private void joinPonderLauncher() {
+		if ( ponderLauncher == null )
+			return;
+		
+		// the ranking clears the flag when it starts, so it is set until the thread is over
+		while ( ponderLauncher.isAlive() ) {
+			ponderers[0].stopThinking = true;
+			try {
+				ponderLauncher.join(SPLIT_WAIT);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
 			}
-			// if the engine has no valid move, an empty string will be returned
+		}
+		ponderLauncher = null;
+	}
+	
+	
+	
+	/**
+	 *  Orders the opponent replies other than the expected one for speculative pondering
+	 *  Every reply gets a shallow full window search on the first ponder helper, so the
+	 *  ordering tables of the main engine are left alone (the helper resets its own
+	 *  killers and ages its history when its ponder search starts)
+	 *  
+	 *  @param Board the chessboard, after the move of the engine
+	 *  @param Move the expected reply (left out)
+	 *  @return the replies, best first
+	 *  
+	 */
+	private ArrayList<Move> ponderReplies(Board board, Move expected) {
+		ArrayList<EvaluatedMove> replies = new ArrayList<EvaluatedMove>();
+		ArrayList<Move> moves = board.generateMoves();
+		board.filterLegal(moves);
+		EvaluatedMove reply;
+		Engine engine = ponderers[0];
+		
+		engine.stopThinking = false;
+		engine.nodesSearched = 0;
+		
+		for (int i = 0; i < moves.size() && ! engine.stopThinking; i++) {
+			if ( moves.get(i).equals(expected) )
+				continue;
+			reply = new EvaluatedMove(moves.get(i), 0);
+			reply.evaluation = engine.searchRootMove(reply, false, - INF, INF, PONDER_REPLY_DEPTH, board);
+			replies.add(reply);
+		}
+		Collections.sort(replies);
+		
+		moves.clear();
+		for (int i = 0; i < replies.size(); i++)
+			moves.add(replies.get(i).m);
+		return moves;
+	}
+	
+	
+	
+	/**
+	 *  Tests if the opponent played one of the replies searched while pondering
+	 *  
+	 *  @param String the move of the opponent in SAN
+	 *  @param Board the chessboard, before the move
+	 *  @return true for a ponder hit
+	 *  
+	 */
+	public boolean isPonderMove(String moveSAN, Board board) {
+		if ( ponderSearches == null )
+			return false;
+		joinPonderLauncher();
+		
+		Move move = new Move(moveSAN, board);
+		for (int i = 0; i < ponderSearches.size(); i++)
+			if ( move.equals(ponderSearches.get(i).reply) )
+				return true;
+		return false;
+	}
+	
+	
+	
+	/**
+	 *  Ponder hit: the search of the reply goes on as a normal search with the time for the move,
+	 *  which is a hard limit even before MIDGAME_MOVES
+	 *  The other ponder searches are cancelled
+	 *  A speculative hit (a reply pondered by a helper) is taken over by the main engine and
+	 *  its helpers, from the depth and along the principal variation the helper reached
+	 *  The opponent's move has to be received before
+	 *  
+	 *  @param Board the chessboard
+	 *  @param long total time remaining in miliseconds
+	 *  @return The move in SAN or an empty string
+	 *  
+	 */
+	public String ponderHit(Board board, long timeAvailable) {
+		PonderSearch hit = null;
+		PonderSearch ps;
+		String moveSAN;
+		
+		joinPonderLauncher();
+		for (int i = 0; i < ponderSearches.size(); i++) {
+			ps = ponderSearches.get(i);
+			if ( ps.zobrist == board.Zobrist_Key )
+				hit = ps;
+			else
+				ps.stop();
+		}
+		
+		// speculative hit: a ponder helper has no helpers of its own, so the main engine
+		// goes on with its search after the last completed depth, with the warm hash table
+		if ( hit.engine != this ) {
+			hit.stop();
+			resumeDepth = hit.engine.completedDepth;
+			previousPVLength = hit.engine.previousPVLength;
+			System.arraycopy(hit.engine.previousPV, 0, previousPV, 0, previousPVLength);
+			ponderSearches = null;
+			pondering = false;
+			ponderHitSearch = true;
+			moveSAN = generateMove(board, timeAvailable);
+			ponderHitSearch = false;
 			return moveSAN;
 		}
+		
+		setTimeForMove(timeAvailable);
+		warmHash = false;
+		
+		// the time for the move is counted from now, with a hard stop at its end
+		startTime = System.currentTimeMillis();
+		ponderHitSearch = true;
+		pondering = false;
+		
+		try {
+			hit.thread.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		ponderSearches = null;
+		ponderHitSearch = false;
+		
+		return playMove(hit.result, board);
 	}
-
+	
+	
+	
+	/**
+	 *  Stops the ponder searches (if any), keeping the hash table they filled (as entries of an older search)
+	 *  Used on a ponder miss and for any command ending pondering
+	 *  
+	 */
+	public void stopPondering() {
+		if ( ponderSearches == null )
+			return;
+		
+		joinPonderLauncher();
+		for (int i = 0; i < ponderSearches.size(); i++)
+			ponderSearches.get(i).stop();
+		ponderSearches = null;
+		pondering = false;
+		// the lines pondered did not happen, so their entries belong to an older search
+		hashTable.newSearch();
+	}
+	
 	
 	
 	/**
@@ -345,9 +345,16 @@ public interface Evaluation {
 	public static final byte PRIMARY_KILLER_SCORE = 95;
 	public static final byte SECONDARY_KILLER_SCORE = 90;
 	
+	// Counter move to the previous move
+	public static final byte COUNTER_MOVE_SCORE = 85;
+	
 	// History moves
 	public static final byte MAX_HISTORY_BONUS = 20;
 	
+	// Capture history, added to or subtracted from the capture scores
+	// enough to swap captures of neighbouring victims by the same piece
+	public static final byte MAX_CAPTURE_HISTORY_BONUS = 8;
+	
 	// Queen promotion
 	public static final byte PROMOTION_QUEEN_SCORE = 80;
 	
@@ -408,6 +415,12 @@ public interface Evaluation {
 		ORDINARY_BISHOP_SCORE, ORDINARY_KNIGHT_SCORE, ORDINARY_PAWN_SCORE
 	};
 	
+	// Captures, adjusted by the capture history, stay between the best non-capture
+	// and the queen promotion: hash move, killers, counter move, queen promotion,
+	// captures, non-captures
+	public static final byte MIN_CAPTURE_SCORE = ORDINARY_QUEEN_SCORE + MAX_HISTORY_BONUS + 1;
+	public static final byte MAX_CAPTURE_SCORE = PROMOTION_QUEEN_SCORE - 1;
+	
 	public static final byte[][] CAPTURE_SCORES = {
 		{ 0, 0, 0, 0, 0, 0, 0 },				// NO PIECE IS 0
 		{ 0, 0, 0, 0, 0, 0, 0 },				// KING CANNOT BE CAPTURED
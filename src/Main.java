@@ -6,6 +6,21 @@ import java.io.InputStreamReader;
 
 public class Main implements Definitions {
 	
+	/** Winboard commands ending pondering: they change the position, the game or the settings */
+	private static final String[] PONDER_ENDING_COMMANDS = {
+		"new", "white", "black", "force", "go", "easy", "quit", "cores", "option",
+		"undo", "remove", "setboard", "edit", "result", "playother"
+	};
+	
+	
+	/** Tests if a command ends pondering; the other ones (ping, post, time...) let it go on */
+	private static boolean endsPondering(String command) {
+		for (int i = 0; i < PONDER_ENDING_COMMANDS.length; i++)
+			if ( command.startsWith(PONDER_ENDING_COMMANDS[i]) )
+				return true;
+		return false;
+	}
+	
 	
 	public static void main(String[] args) {
 		
@@ -21,6 +36,16 @@ public class Main implements Definitions {
 		Board board = new Board();
 		// an engine object
 		Engine engine = new Engine("book.dat");
+		// number of search threads, kept for new games
+		int cores = 1;
+		// parallel search used with several threads, kept for new games
+		int parallelMode = PARALLEL_LAZY_SMP;
+		// number of principal variations, kept for new games
+		int multiPV = 1;
+		// pondering on the opponent's time (hard / easy)
+		boolean ponder = false;
+		// opponent replies searched while pondering, kept for new games
+		int ponderReplies = 1;
 		
 		while (true) {
 			
@@ -31,6 +56,11 @@ public class Main implements Definitions {
 				e.printStackTrace();
 			}
 			
+			// commands changing the position, the game or the settings end pondering
+			// (the opponent's move is a ponder hit or a miss, see usermove)
+			if ( endsPondering(command) )
+				engine.stopPondering();
+			
 			if ( command.compareTo("xboard") == 0 ) {
 				try {
 					// should read the protover command
@@ -42,7 +72,10 @@ public class Main implements Definitions {
 					// send features to winboard
 					// SAN notation will be used
 					// engine moves will be preceded by "usermove"
-					System.out.println("feature san=1 usermove=1 done=1 myname=\"FairyPrincess1.0\"");
+					System.out.println("feature san=1 usermove=1 smp=1 myname=\"FairyPrincess1.0\" " +
+							"option=\"Parallel search -combo *Lazy SMP /// YBWC /// ABDADA /// Root moves\" " +
+							"option=\"MultiPV -spin 1 1 64\" " +
+							"option=\"Ponder replies -spin 1 1 16\" done=1");
 			}
 			
 			else if ( command.compareTo("new") == 0 ) {
@@ -50,6 +83,10 @@ public class Main implements Definitions {
 				board = new Board();
 				// start engine
 				engine = new Engine("book.dat");
+				engine.setThreads(cores);
+				engine.setParallelMode(parallelMode);
+				engine.setMultiPV(multiPV);
+				engine.setPonderReplies(ponderReplies);
 				// engine starts with the black pieces
 				engineColor = BLACK;
 				// output a new line
@@ -74,9 +111,17 @@ public class Main implements Definitions {
 					command = engine.generateMove(board, timeAvailable);
 					command = "move " + command;
 					System.out.println( command );
+					if ( ponder )
+						engine.startPondering(board);
 				}
 			}
 			
+			else if ( command.compareTo("hard") == 0 )
+				ponder = true;
+			
+			else if ( command.compareTo("easy") == 0 )
+				ponder = false;
+			
 			else if ( command.compareTo("quit") == 0 )
 				// force exit
 				System.exit(0);
@@ -84,16 +129,54 @@ public class Main implements Definitions {
 			else if ( command.startsWith("usermove") ) {
 				command = command.substring(9, command.length());
 				// System.out.println(board);
-				engine.receiveMove(command, board);
-				command = engine.generateMove(board, timeAvailable);
+				// ponder hit: the ponder search goes on with the time for the move
+				if ( engine.isPonderMove(command, board) ) {
+					engine.receiveMove(command, board);
+					command = engine.ponderHit(board, timeAvailable);
+				}
+				// ponder miss: search again, the hash table is kept
+				else {
+					engine.stopPondering();
+					engine.receiveMove(command, board);
+					command = engine.generateMove(board, timeAvailable);
+				}
 				// System.out.println(board);
 				if ( command.length() != 0 ) {
 					command = "move " + command;
 					System.out.println( command );
+					if ( ponder )
+						engine.startPondering(board);
 				}
 				else
 					System.out.println("resign");
 			}
+			else if ( command.startsWith("cores") ) {
+				cores = Integer.parseInt( command.substring(6, command.length()).trim() );
+				engine.setThreads(cores);
+			}
+			else if ( command.startsWith("option") ) {
+				// option name=value
+				command = command.substring(7, command.length());
+				if ( command.startsWith("Parallel search=") ) {
+					if ( command.endsWith("YBWC") )
+						parallelMode = PARALLEL_YBWC;
+					else if ( command.endsWith("ABDADA") )
+						parallelMode = PARALLEL_ABDADA;
+					else if ( command.endsWith("Root moves") )
+						parallelMode = PARALLEL_ROOT_MOVES;
+					else
+						parallelMode = PARALLEL_LAZY_SMP;
+					engine.setParallelMode(parallelMode);
+				}
+				else if ( command.startsWith("MultiPV=") ) {
+					multiPV = Integer.parseInt( command.substring(8, command.length()).trim() );
+					engine.setMultiPV(multiPV);
+				}
+				else if ( command.startsWith("Ponder replies=") ) {
+					ponderReplies = Integer.parseInt( command.substring(15, command.length()).trim() );
+					engine.setPonderReplies(ponderReplies);
+				}
+			}
 			else if ( command.startsWith("time") ) {
 				timeAvailable = Long.parseLong( command.substring(5, command.length()) ) * 10;
 			}
@@ -564,6 +564,21 @@ public class Move implements Definitions {
 	}
 	
 	
+	/** Packs the move into an int, 4 bits per field (never 0 for a valid move) */
+	public int pack() {
+		return (pieceMoving + 6) | initialLine << 4 | initialCol << 8 | destinationLine << 12 |
+				destinationCol << 16 | (pieceCaptured + 6) << 20 | moveType << 24;
+	}
+	
+	
+	/** Creates a move from an int returned by pack() */
+	public static Move unpack(int packed) {
+		return new Move( (byte) ((packed & 15) - 6), (byte) (packed >> 4 & 15), (byte) (packed >> 8 & 15),
+				(byte) (packed >> 12 & 15), (byte) (packed >> 16 & 15), (byte) ((packed >> 20 & 15) - 6),
+				(byte) (packed >> 24 & 15) );
+	}
+	
+	
 	/** Equals method to check if two moves are similar */
 	public boolean equals(Move move) {
 		